@@ -0,0 +1,136 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the crop-to-preview paths on a sensor-sized JPEG: region decode + rotate + re-encode
+ * through {@link StripEncoder} (bitmap path) against the DCT-domain transform. Timings are logged under the
+ * "CameraPreview Benchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JpegLosslessTransformBenchmark {
+
+    private static final String TAG = "CameraPreview Benchmark";
+    private static final int WIDTH = 4032;
+    private static final int HEIGHT = 3024;
+    private static final int RUNS = 5;
+
+    private static byte[] capture;
+
+    @BeforeClass
+    public static void createCapture() {
+        // Landscape sensor frame with enough detail for realistic entropy-coded sizes
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        for (int i = 0; i < 400; i++) {
+            paint.setColor(Color.rgb((i * 37) & 0xFF, (i * 91) & 0xFF, (i * 13) & 0xFF));
+            int x = (i * 7919) % WIDTH;
+            int y = (i * 104729) % HEIGHT;
+            canvas.drawCircle(x, y, 40 + (i % 200), paint);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        bitmap.recycle();
+        capture = out.toByteArray();
+    }
+
+    @Test
+    public void cropToPreviewPortrait() throws Exception {
+        // Portrait preview at 9:16 on a sensor frame tagged with a 90 degree EXIF rotation
+        int uprightW = HEIGHT;
+        int uprightH = WIDTH;
+        // A 3:4 upright frame is wider than 9:16, so the preview trims its width
+        int cropW = uprightH * 9 / 16;
+        Rect crop = new Rect((uprightW - cropW) / 2, 0, (uprightW + cropW) / 2, uprightH);
+        compare(90, crop);
+    }
+
+    @Test
+    public void cropToPreviewLandscape() throws Exception {
+        int cropH = WIDTH * 9 / 16;
+        Rect crop = new Rect(0, (HEIGHT - cropH) / 2, WIDTH, (HEIGHT + cropH) / 2);
+        compare(0, crop);
+    }
+
+    private void compare(int rotation, Rect crop) throws Exception {
+        long[] bitmapTimes = new long[RUNS];
+        long[] losslessTimes = new long[RUNS];
+        int bitmapSize = 0;
+        JpegLosslessTransform.Result lossless = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            // Unlimited budget: one strip, as the capture pipeline does when memory allows
+            StripEncoder.Result encoded = StripEncoder.encode(
+                capture,
+                rotation,
+                crop,
+                crop.width(),
+                crop.height(),
+                ImageEncoder.JPEG,
+                95,
+                Long.MAX_VALUE,
+                null
+            );
+            bitmapTimes[run] = System.nanoTime() - start;
+            bitmapSize = encoded.data.length;
+
+            start = System.nanoTime();
+            lossless = JpegLosslessTransform.transform(capture, rotation, crop.left, crop.top, crop.right, crop.bottom);
+            losslessTimes[run] = System.nanoTime() - start;
+            assertNotNull("Bitmap.compress output should be supported", lossless);
+        }
+
+        // Output must decode to the reported size, at most one MCU smaller than the crop per edge
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(lossless.jpeg, 0, lossless.jpeg.length, bounds);
+        assertEquals(lossless.width, bounds.outWidth);
+        assertEquals(lossless.height, bounds.outHeight);
+        assertTrue(crop.width() - lossless.width < 32);
+        assertTrue(crop.height() - lossless.height < 32);
+
+        Log.i(
+            TAG,
+            "rotation " +
+                rotation +
+                ", crop " +
+                crop.width() +
+                "x" +
+                crop.height() +
+                ": bitmap median " +
+                median(bitmapTimes) / 1_000_000 +
+                " ms (" +
+                bitmapSize +
+                " bytes), lossless median " +
+                median(losslessTimes) / 1_000_000 +
+                " ms (" +
+                lossless.jpeg.length +
+                " bytes, " +
+                lossless.width +
+                "x" +
+                lossless.height +
+                ")"
+        );
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -10,12 +10,15 @@ import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.location.Location;
 import android.net.Uri;
 import android.provider.Settings;
+import android.util.Base64;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.Size;
@@ -45,8 +48,15 @@ import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 @CapacitorPlugin(
@@ -83,6 +93,13 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
             if (cameraXView == null) {
                 cameraXView = new CameraXView(getContext(), getBridge().getWebView());
                 cameraXView.setListener(this);
+                cameraXView.setMaxCapturesInFlight(maxCapturesInFlight);
+                cameraXView.setCaptureMemoryBudget(captureMemoryBudget);
+                cameraXView.setCaptureStore(getCaptureStore());
+                cameraXView.setGallerySaver(getGallerySaver());
+                cameraXView.setCaptureTimings(captureTimings);
+                cameraXView.setWatermark(watermark);
+                attachFrameProcessors(cameraXView);
             }
             cameraXView.startSession(lastSessionConfig);
         }
@@ -106,9 +123,8 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
     static final String CAMERA_ONLY_PERMISSION_ALIAS = "cameraOnly";
     static final String CAMERA_WITH_LOCATION_PERMISSION_ALIAS = "cameraWithLocation";
     static final String MICROPHONE_ONLY_PERMISSION_ALIAS = "microphoneOnly";
+    private static final int MAX_BURST_COUNT = 100;
 
-    private String captureCallbackId = "";
-    private String sampleCallbackId = "";
     private String cameraStartCallbackId = "";
     private final Object pendingStartLock = new Object();
     private PluginCall pendingStartCall;
@@ -123,6 +139,69 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
     private boolean lastDisableAudio = true;
     private Drawable originalWindowBackground;
     private boolean isCameraPermissionDialogShowing = false;
+    private int maxCapturesInFlight = CameraXView.DEFAULT_MAX_CAPTURES_IN_FLIGHT;
+    private long captureMemoryBudget = 0; // 0 = CameraXView's default
+    private static final int DEFAULT_THUMBNAIL_SIZE = 320;
+    private static final List<String> CAPTURE_MODES = Arrays.asList("minimizeLatency", "maximizeQuality", "zeroShutterLag");
+    private static final String EXIF_NONE = "none";
+    private static final String EXIF_ALL = "all";
+    // Progressive captures whose full result still has to be reported with a captureComplete event
+    private final Set<String> progressiveCaptures = new HashSet<>();
+    // Shared by every camera view so the budget and index outlive sessions
+    private CaptureStore captureStore;
+    private GallerySaver gallerySaver;
+    private final CaptureTimings captureTimings = new CaptureTimings();
+    private volatile OverlayRenderer.Watermark watermark; // applied to every new camera view
+    // Native frame processors registered by the host app; re-applied to every new camera view
+    private final LinkedHashMap<String, FrameProcessorRegistration> frameProcessors = new LinkedHashMap<>();
+
+    private static final class FrameProcessorRegistration {
+
+        final FrameProcessor processor;
+        final int frameSkip;
+        final long budgetMs;
+
+        FrameProcessorRegistration(FrameProcessor processor, int frameSkip, long budgetMs) {
+            this.processor = processor;
+            this.frameSkip = frameSkip;
+            this.budgetMs = budgetMs;
+        }
+    }
+
+    /**
+     * Registers a native processor on the analysis stream. Host apps reach this through
+     * {@code bridge.getPlugin("CameraPreview").getInstance()}; registrations survive camera restarts.
+     * Results returned by the processor are emitted as {@code frameProcessorResult} events.
+     *
+     * @param frameSkip frames to skip between two runs (0 = every frame)
+     * @param budgetMs time budget per run, 0 for none
+     */
+    public void registerFrameProcessor(String name, FrameProcessor processor, int frameSkip, long budgetMs) {
+        synchronized (frameProcessors) {
+            if (cameraXView != null) {
+                cameraXView.registerFrameProcessor(name, processor, frameSkip, budgetMs);
+            }
+            frameProcessors.put(name, new FrameProcessorRegistration(processor, frameSkip, budgetMs));
+        }
+    }
+
+    public void unregisterFrameProcessor(String name) {
+        synchronized (frameProcessors) {
+            frameProcessors.remove(name);
+            if (cameraXView != null) {
+                cameraXView.unregisterFrameProcessor(name);
+            }
+        }
+    }
+
+    private void attachFrameProcessors(CameraXView view) {
+        synchronized (frameProcessors) {
+            for (Map.Entry<String, FrameProcessorRegistration> entry : frameProcessors.entrySet()) {
+                FrameProcessorRegistration registration = entry.getValue();
+                view.registerFrameProcessor(entry.getKey(), registration.processor, registration.frameSkip, registration.budgetMs);
+            }
+        }
+    }
 
     @PluginMethod
     public void getExposureModes(PluginCall call) {
@@ -300,6 +379,17 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
             return;
         }
 
+        String formatError = pictureFormatError(call.getString("format", ImageEncoder.JPEG));
+        if (formatError != null) {
+            call.reject(formatError);
+            return;
+        }
+        Object exif = call.getData().opt("exif");
+        if (exif != null && !EXIF_NONE.equals(exif) && !EXIF_ALL.equals(exif) && !(exif instanceof JSONArray)) {
+            call.reject("exif must be none, all or an array of tag names");
+            return;
+        }
+
         final boolean withExifLocation = Boolean.TRUE.equals(call.getBoolean("withExifLocation", false));
 
         if (withExifLocation) {
@@ -354,91 +444,168 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
     }
 
     private void proceedWithCapture(PluginCall call, Location location) {
+        // Saved per call: several captures can be in flight and each resolves its own call
         bridge.saveCall(call);
-        captureCallbackId = call.getCallbackId();
 
+        String format = call.getString("format", ImageEncoder.JPEG);
         Integer quality = Objects.requireNonNull(call.getInt("quality", 85));
         final boolean saveToGallery = Boolean.TRUE.equals(call.getBoolean("saveToGallery"));
         Integer width = call.getInt("width");
         Integer height = call.getInt("height");
         final boolean embedTimestamp = Boolean.TRUE.equals(call.getBoolean("embedTimestamp"));
         final boolean embedLocation = Boolean.TRUE.equals(call.getBoolean("embedLocation"));
+        Integer thumbnailSize = null;
+        if (Boolean.TRUE.equals(call.getBoolean("progressive"))) {
+            thumbnailSize = Math.max(1, Objects.requireNonNull(call.getInt("thumbnailSize", DEFAULT_THUMBNAIL_SIZE)));
+            synchronized (progressiveCaptures) {
+                progressiveCaptures.add(call.getCallbackId());
+            }
+        }
 
-        cameraXView.capturePhoto(quality, saveToGallery, width, height, location, embedTimestamp, embedLocation);
+        cameraXView.capturePhoto(
+            call.getCallbackId(),
+            format,
+            quality,
+            saveToGallery,
+            width,
+            height,
+            location,
+            embedTimestamp,
+            embedLocation,
+            thumbnailSize,
+            exifTagsOption(call)
+        );
     }
 
     @PluginMethod
-    public void captureSample(PluginCall call) {
+    public void captureBurst(PluginCall call) {
         if (cameraXView == null || !cameraXView.isRunning()) {
             call.reject("Camera is not running");
             return;
         }
 
-        // PREVENT OVERWRITE: Check if a request is already pending
-        if (sampleCallbackId != null) {
-            call.reject("Camera is busy taking a sample");
+        int count = call.getInt("count", 0);
+        int interval = call.getInt("interval", 0);
+        Integer quality = call.getInt("quality");
+
+        if (count < 1 || count > MAX_BURST_COUNT) {
+            call.reject("Invalid count parameter. Must be between 1 and " + MAX_BURST_COUNT);
+            return;
+        }
+        if (interval < 0) {
+            call.reject("Invalid interval parameter. Must be >= 0");
+            return;
+        }
+        if (quality != null && (quality < 1 || quality > 100)) {
+            call.reject("Invalid quality parameter. Must be between 1 and 100");
             return;
         }
 
         bridge.saveCall(call);
-        sampleCallbackId = call.getCallbackId();
-        
-        // Simplify: getInt with default never returns null, no need for Objects.requireNonNull
-        int quality = call.getInt("quality", 85);
-        
-        cameraXView.captureSample(quality);
+        cameraXView.captureBurst(call.getCallbackId(), count, interval, quality);
     }
 
     @PluginMethod
-    public void captureDownscaledSample(PluginCall call) {
+    public void captureSample(PluginCall call) {
         if (cameraXView == null || !cameraXView.isRunning()) {
             call.reject("Camera is not running");
             return;
         }
 
-        if (sampleCallbackId != null) {
-            call.reject("Camera is busy taking a sample");
+        String format = call.getString("format", ImageEncoder.JPEG);
+        String formatError = pictureFormatError(format);
+        if (formatError != null) {
+            call.reject(formatError);
             return;
         }
 
+        // Each sample request is keyed by its callback id, so concurrent calls queue up natively
         bridge.saveCall(call);
-        sampleCallbackId = call.getCallbackId();
-        
+
         int quality = call.getInt("quality", 85);
+        // Negative = accept a cached frame of any age
+        long maxAge = call.getInt("maxAge", -1);
+        int sharpestOf = call.getInt("sharpestOf", 1);
+        int sharpestWindow = call.getInt("sharpestWindow", 0);
+
+        cameraXView.captureSample(call.getCallbackId(), format, quality, maxAge, sharpestOf, sharpestWindow);
+    }
+
+    @PluginMethod
+    public void setSampleCache(PluginCall call) {
+        boolean enabled = Boolean.TRUE.equals(call.getBoolean("enabled"));
+        if (!enabled) {
+            if (cameraXView != null) {
+                cameraXView.disableSampleCache();
+            }
+            call.resolve();
+            return;
+        }
+
+        if (cameraXView == null || !cameraXView.isRunning()) {
+            call.reject("Camera is not running");
+            return;
+        }
+
+        int maxFps = call.getInt("maxFps", 10);
         int size = call.getInt("size", 0);
+        int quality = call.getInt("quality", 85);
 
-        if (size <= 0) {
-            // Clean up immediately since we aren't proceeding
-            bridge.releaseCall(call);
-            sampleCallbackId = null; 
-            call.reject("Invalid size parameter. Must be > 0");
+        if (maxFps <= 0) {
+            call.reject("Invalid maxFps parameter. Must be > 0");
             return;
         }
 
-        cameraXView.captureDownscaledSample(quality, size);
+        try {
+            cameraXView.enableSampleCache(maxFps, size, quality);
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to enable sample cache: " + e.getMessage());
+        }
     }
 
     @PluginMethod
-    public void captureCroppedSample(PluginCall call) {
+    public void captureDownscaledSample(PluginCall call) {
         if (cameraXView == null || !cameraXView.isRunning()) {
             call.reject("Camera is not running");
             return;
         }
 
-        if (sampleCallbackId != null) {
-            call.reject("Camera is busy taking a sample");
+        String format = call.getString("format", ImageEncoder.JPEG);
+        int quality = call.getInt("quality", 85);
+        int size = call.getInt("size", 0);
+
+        String formatError = pictureFormatError(format);
+        if (formatError != null) {
+            call.reject(formatError);
+            return;
+        }
+        if (size <= 0) {
+            call.reject("Invalid size parameter. Must be > 0");
             return;
         }
 
         bridge.saveCall(call);
-        sampleCallbackId = call.getCallbackId();
-        
+        cameraXView.captureDownscaledSample(call.getCallbackId(), format, quality, size);
+    }
+
+    @PluginMethod
+    public void captureCroppedSample(PluginCall call) {
+        if (cameraXView == null || !cameraXView.isRunning()) {
+            call.reject("Camera is not running");
+            return;
+        }
+
+        String format = call.getString("format", ImageEncoder.JPEG);
         int quality = call.getInt("quality", 85);
         JSObject coords = call.getObject("coords");
 
+        String formatError = pictureFormatError(format);
+        if (formatError != null) {
+            call.reject(formatError);
+            return;
+        }
         if (coords == null) {
-            bridge.releaseCall(call);
-            sampleCallbackId = null;
             call.reject("Coords object is required");
             return;
         }
@@ -449,13 +616,74 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
         int height = coords.getInteger("height", 0);
 
         if (width <= 0 || height <= 0) {
-            bridge.releaseCall(call);
-            sampleCallbackId = null;
             call.reject("Invalid crop dimensions");
             return;
         }
 
-        cameraXView.captureCroppedSample(quality, x, y, width, height);
+        bridge.saveCall(call);
+        cameraXView.captureCroppedSample(call.getCallbackId(), format, quality, x, y, width, height);
+    }
+
+    @PluginMethod
+    public void startFrameStream(PluginCall call) {
+        if (cameraXView == null || !cameraXView.isRunning()) {
+            call.reject("Camera is not running");
+            return;
+        }
+
+        int maxFps = call.getInt("maxFps", 10);
+        int size = call.getInt("size", 0);
+        int quality = call.getInt("quality", 70);
+        int ackTimeout = call.getInt("ackTimeout", 1000);
+        double sceneChangeThreshold = call.getDouble("sceneChangeThreshold", 0.0);
+
+        if (maxFps <= 0) {
+            call.reject("Invalid maxFps parameter. Must be > 0");
+            return;
+        }
+
+        try {
+            cameraXView.startFrameStream(maxFps, size, quality, ackTimeout, sceneChangeThreshold);
+            call.resolve();
+        } catch (Exception e) {
+            call.reject("Failed to start frame stream: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void stopFrameStream(PluginCall call) {
+        long[] stats = cameraXView != null ? cameraXView.stopFrameStream() : null;
+        JSObject ret = new JSObject();
+        ret.put("framesSent", stats != null ? stats[0] : 0);
+        ret.put("framesDropped", stats != null ? stats[1] : 0);
+        ret.put("framesUnchanged", stats != null ? stats[2] : 0);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void acknowledgeFrame(PluginCall call) {
+        Long frameId = call.getLong("frameId");
+        if (frameId == null) {
+            call.reject("frameId parameter is required");
+            return;
+        }
+        if (cameraXView != null) {
+            cameraXView.acknowledgeStreamFrame(frameId);
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getFrameProcessorStats(PluginCall call) {
+        JSArray processors = new JSArray();
+        if (cameraXView != null) {
+            for (JSONObject stats : cameraXView.getFrameProcessorStats()) {
+                processors.put(stats);
+            }
+        }
+        JSObject ret = new JSObject();
+        ret.put("processors", processors);
+        call.resolve(ret);
     }
 
     @PluginMethod
@@ -533,6 +761,85 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
         call.resolve();
     }
 
+    @PluginMethod
+    public void setCaptureMode(PluginCall call) {
+        String mode = call.getString("captureMode");
+        if (mode == null || !CAPTURE_MODES.contains(mode)) {
+            call.reject("captureMode must be one of minimizeLatency, maximizeQuality, zeroShutterLag");
+            return;
+        }
+        if (cameraXView == null || !cameraXView.isRunning()) {
+            call.reject("Camera is not running");
+            return;
+        }
+        cameraXView.setCaptureMode(
+            mode,
+            new CameraXView.CaptureModeCallback() {
+                @Override
+                public void onSuccess(String effectiveMode) {
+                    JSObject ret = new JSObject();
+                    ret.put("captureMode", effectiveMode);
+                    call.resolve(ret);
+                }
+
+                @Override
+                public void onError(String message) {
+                    call.reject(message);
+                }
+            }
+        );
+    }
+
+    @PluginMethod
+    public void getCaptureMode(PluginCall call) {
+        if (cameraXView == null || !cameraXView.isRunning()) {
+            call.reject("Camera is not running");
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("captureMode", cameraXView.getEffectiveCaptureMode());
+        ret.put("zeroShutterLagSupported", cameraXView.isZslSupported());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getSupportedPictureFormats(PluginCall call) {
+        JSArray formats = new JSArray();
+        for (String format : ImageEncoder.supportedFormats()) {
+            formats.put(format);
+        }
+        JSObject ret = new JSObject();
+        ret.put("formats", formats);
+        call.resolve(ret);
+    }
+
+    // Table rows of the EXIF tags a capture reports; null for none. Defaults to all, as before the option
+    private static String[][] exifTagsOption(PluginCall call) {
+        Object exif = call.getData().opt("exif");
+        if (EXIF_NONE.equals(exif)) return null;
+        if (exif instanceof JSONArray) {
+            JSONArray array = (JSONArray) exif;
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                String name = array.optString(i, null);
+                if (name != null) names.add(name);
+            }
+            return CameraXView.exifTagsFor(names);
+        }
+        return CameraXView.EXIF_TAGS;
+    }
+
+    // Null when captures and samples can be encoded in the format on this device
+    private static String pictureFormatError(String format) {
+        if (!ImageEncoder.FORMATS.contains(format)) {
+            return "format must be one of jpeg, png, webp, webp-lossless, heif";
+        }
+        if (!ImageEncoder.isSupported(format)) {
+            return "format " + format + " is not supported on this device";
+        }
+        return null;
+    }
+
     @PluginMethod
     public void getAvailableDevices(PluginCall call) {
         List<CameraDevice> devices = CameraXView.getAvailableDevicesStatic(getContext());
@@ -973,6 +1280,20 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
         //noinspection DataFlowIssue
         final boolean disableFocusIndicator = call.getBoolean("disableFocusIndicator", false);
         final boolean enableVideoMode = Boolean.TRUE.equals(call.getBoolean("enableVideoMode", false));
+        final JSObject analysisResolution = call.getObject("analysisResolution");
+        final String analysisAspectRatio = call.getString("analysisAspectRatio");
+        final String captureMode = call.getString("captureMode", "minimizeLatency");
+        if (!CAPTURE_MODES.contains(captureMode)) {
+            call.reject("captureMode must be one of minimizeLatency, maximizeQuality, zeroShutterLag");
+            return;
+        }
+        maxCapturesInFlight = Objects.requireNonNull(call.getInt("maxCapturesInFlight", CameraXView.DEFAULT_MAX_CAPTURES_IN_FLIGHT));
+        Double memoryBudget = call.getDouble("captureMemoryBudget", 0.0);
+        if (memoryBudget == null || memoryBudget < 0) {
+            call.reject("captureMemoryBudget must be a non-negative number");
+            return;
+        }
+        captureMemoryBudget = memoryBudget.longValue();
 
         // Check for conflict between aspectRatio and size
         if (call.getData().has("aspectRatio") && (call.getData().has("width") || call.getData().has("height"))) {
@@ -1003,6 +1324,13 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
         previousOrientationRequest = getBridge().getActivity().getRequestedOrientation();
         cameraXView = new CameraXView(getContext(), getBridge().getWebView());
         cameraXView.setListener(this);
+        cameraXView.setMaxCapturesInFlight(maxCapturesInFlight);
+        cameraXView.setCaptureMemoryBudget(captureMemoryBudget);
+        cameraXView.setCaptureStore(getCaptureStore());
+        cameraXView.setGallerySaver(getGallerySaver());
+        cameraXView.setCaptureTimings(captureTimings);
+        cameraXView.setWatermark(watermark);
+        attachFrameProcessors(cameraXView);
 
         String finalDeviceId = deviceId;
         float finalTargetZoom = targetZoom;
@@ -1274,6 +1602,11 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
                 );
                 config.setTargetZoom(finalTargetZoom);
                 config.setCentered(isCentered);
+                if (analysisResolution != null) {
+                    config.setAnalysisResolution(analysisResolution.getInteger("width", 0), analysisResolution.getInteger("height", 0));
+                }
+                config.setAnalysisAspectRatio(analysisAspectRatio);
+                config.setCaptureMode(captureMode);
 
                 bridge.saveCall(call);
                 cameraStartCallbackId = call.getCallbackId();
@@ -1507,30 +1840,91 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
     }
 
     @Override
-    public void onPictureTaken(String base64, JSONObject exif) {
-        PluginCall pluginCall = bridge.getSavedCall(captureCallbackId);
+    public void onPictureTaken(String requestId, String value, JSONObject exif, Map<String, Double> timings, long peakBytes) {
+        boolean progressive = removeProgressiveCapture(requestId);
+        PluginCall pluginCall = bridge.getSavedCall(requestId);
         if (pluginCall == null) {
-            Log.e("CameraPreview", "onPictureTaken: captureCallbackId is null");
+            if (progressive) {
+                // The call already resolved with the thumbnail
+                JSObject data = new JSObject();
+                data.put("captureId", requestId);
+                data.put("value", value);
+                data.put("exif", exif);
+                data.put("timings", new JSONObject(timings));
+                if (peakBytes >= 0) {
+                    data.put("peakBytes", peakBytes);
+                }
+                notifyListeners("captureComplete", data);
+            } else {
+                Log.e("CameraPreview", "onPictureTaken: no saved call for " + requestId);
+            }
             return;
         }
         JSObject result = new JSObject();
-        result.put("value", base64);
+        result.put("value", value);
         result.put("exif", exif);
+        if (Boolean.TRUE.equals(pluginCall.getBoolean("saveToGallery"))) {
+            // Matches the gallerySave event item of this photo
+            result.put("captureId", requestId);
+        }
+        if (Boolean.TRUE.equals(pluginCall.getBoolean("timings"))) {
+            result.put("timings", new JSONObject(timings));
+            if (peakBytes >= 0) {
+                result.put("peakBytes", peakBytes);
+            }
+        }
+        long resolveStart = System.nanoTime();
         pluginCall.resolve(result);
+        captureTimings.record("bridgeResolve", System.nanoTime() - resolveStart);
         bridge.releaseCall(pluginCall);
     }
 
     @Override
-    public void onPictureTakenError(String message) {
-        PluginCall pluginCall = bridge.getSavedCall(captureCallbackId);
+    public void onPictureThumbnail(String requestId, String base64, int width, int height) {
+        // Under the lock so the full result either finds the call released or answers it itself
+        synchronized (progressiveCaptures) {
+            PluginCall pluginCall = progressiveCaptures.contains(requestId) ? bridge.getSavedCall(requestId) : null;
+            if (pluginCall == null) {
+                // The full result was faster and has answered the call
+                return;
+            }
+            JSObject result = new JSObject();
+            result.put("value", base64);
+            result.put("exif", new JSObject());
+            result.put("width", width);
+            result.put("height", height);
+            result.put("thumbnail", true);
+            result.put("captureId", requestId);
+            pluginCall.resolve(result);
+            bridge.releaseCall(pluginCall);
+        }
+    }
+
+    @Override
+    public void onPictureTakenError(String requestId, String message) {
+        boolean progressive = removeProgressiveCapture(requestId);
+        PluginCall pluginCall = bridge.getSavedCall(requestId);
         if (pluginCall == null) {
-            Log.e("CameraPreview", "onPictureTakenError: captureCallbackId is null");
+            if (progressive) {
+                JSObject data = new JSObject();
+                data.put("captureId", requestId);
+                data.put("error", message);
+                notifyListeners("captureComplete", data);
+            } else {
+                Log.e("CameraPreview", "onPictureTakenError: no saved call for " + requestId);
+            }
             return;
         }
         pluginCall.reject(message);
         bridge.releaseCall(pluginCall);
     }
 
+    private boolean removeProgressiveCapture(String requestId) {
+        synchronized (progressiveCaptures) {
+            return progressiveCaptures.remove(requestId);
+        }
+    }
+
     @Override
     public void onCameraStopped(CameraXView source) {
         if (cameraXView != null && cameraXView != source) {
@@ -1703,6 +2097,12 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
                     ")"
             );
 
+            Size analysisSize = cameraXView != null ? cameraXView.getAnalysisResolution() : null;
+            if (analysisSize != null) {
+                result.put("analysisWidth", analysisSize.getWidth());
+                result.put("analysisHeight", analysisSize.getHeight());
+            }
+
             call.resolve(result);
             bridge.releaseCall(call);
             cameraStartCallbackId = null; // Prevent re-use
@@ -1710,28 +2110,100 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
     }
 
     @Override
-    public void onSampleTaken(String result) {
-        PluginCall call = bridge.getSavedCall(sampleCallbackId);
+    public void onSampleTaken(String requestId, String result, long ageMs) {
+        PluginCall call = bridge.getSavedCall(requestId);
         if (call != null) {
             JSObject ret = new JSObject();
             ret.put("value", result);
+            ret.put("age", ageMs);
             call.resolve(ret);
             bridge.releaseCall(call);
-            sampleCallbackId = null;
         } else {
-            Log.w("CameraPreview", "onSampleTaken: no pending call to resolve");
+            Log.w("CameraPreview", "onSampleTaken: no pending call to resolve for " + requestId);
+        }
+    }
+
+    @Override
+    public void onSampleTakenError(String requestId, String message) {
+        PluginCall call = bridge.getSavedCall(requestId);
+        if (call != null) {
+            call.reject(message);
+            bridge.releaseCall(call);
+        } else {
+            Log.e("CameraPreview", "Sample taken error (no pending call " + requestId + "): " + message);
+        }
+    }
+
+    @Override
+    public void onStreamFrame(
+        long frameId,
+        String base64,
+        int width,
+        int height,
+        long droppedFrames,
+        double sceneDiff,
+        long unchangedFrames
+    ) {
+        JSObject data = new JSObject();
+        data.put("frameId", frameId);
+        data.put("value", base64);
+        data.put("width", width);
+        data.put("height", height);
+        data.put("droppedFrames", droppedFrames);
+        data.put("unchangedFrames", unchangedFrames);
+        if (sceneDiff >= 0) {
+            data.put("sceneDiff", sceneDiff);
+        }
+        notifyListeners("frameStream", data);
+    }
+
+    @Override
+    public void onFrameProcessorResult(String name, JSONObject result) {
+        JSObject data = new JSObject();
+        data.put("name", name);
+        data.put("result", result);
+        notifyListeners("frameProcessorResult", data);
+    }
+
+    @Override
+    public void onBurstProgress(String requestId, int index, int count, String path, String error) {
+        JSObject data = new JSObject();
+        data.put("index", index);
+        data.put("count", count);
+        if (path != null) {
+            data.put("path", path);
+        } else {
+            data.put("error", error);
+        }
+        notifyListeners("burstProgress", data);
+    }
+
+    @Override
+    public void onBurstComplete(String requestId, List<String> paths, int failed) {
+        PluginCall call = bridge.getSavedCall(requestId);
+        if (call == null) {
+            Log.e("CameraPreview", "Burst complete (no pending call " + requestId + ")");
+            return;
         }
+        JSArray files = new JSArray();
+        for (String path : paths) {
+            files.put(path);
+        }
+        JSObject ret = new JSObject();
+        ret.put("files", files);
+        ret.put("failed", failed);
+        call.resolve(ret);
+        bridge.releaseCall(call);
     }
 
     @Override
-    public void onSampleTakenError(String message) {
-        PluginCall call = bridge.getSavedCall(sampleCallbackId);
+    public void onBurstError(String requestId, String message) {
+        PluginCall call = bridge.getSavedCall(requestId);
         if (call != null) {
             call.reject(message);
             bridge.releaseCall(call);
-            sampleCallbackId = null;
         } else {
-            Log.e("CameraPreview", "Sample taken error (no pending call): " + message);
+            Log.e("CameraPreview", "Burst error (no pending call " + requestId + "): " + message);
         }
     }
 
@@ -1889,8 +2361,10 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
             return;
         }
         try {
-            java.io.File f = new java.io.File(Objects.requireNonNull(Uri.parse(path).getPath()));
-            boolean deleted = f.exists() && f.delete();
+            String filePath = Objects.requireNonNull(Uri.parse(path).getPath());
+            // Managed files leave the store's index too
+            java.io.File f = new java.io.File(filePath);
+            boolean deleted = getCaptureStore().remove(filePath) || (f.exists() && f.delete());
             JSObject ret = new JSObject();
             ret.put("success", deleted);
             call.resolve(ret);
@@ -1899,6 +2373,165 @@ public class CameraPreview extends Plugin implements CameraXView.CameraXViewList
         }
     }
 
+    @PluginMethod
+    public void getCaptureTimings(PluginCall call) {
+        JSObject stages = new JSObject();
+        for (Map.Entry<String, CaptureTimings.StageStats> entry : captureTimings.snapshot().entrySet()) {
+            CaptureTimings.StageStats stats = entry.getValue();
+            JSArray buckets = new JSArray();
+            for (int count : stats.buckets) {
+                buckets.put(count);
+            }
+            JSObject stage = new JSObject();
+            stage.put("recorded", stats.recorded);
+            stage.put("count", stats.count);
+            stage.put("mean", stats.mean);
+            stage.put("min", stats.min);
+            stage.put("p50", stats.p50);
+            stage.put("p90", stats.p90);
+            stage.put("p99", stats.p99);
+            stage.put("max", stats.max);
+            stage.put("buckets", buckets);
+            stages.put(entry.getKey(), stage);
+        }
+        JSArray bounds = new JSArray();
+        for (long bound : CaptureTimings.BUCKET_BOUNDS_MS) {
+            bounds.put(bound);
+        }
+        JSObject ret = new JSObject();
+        ret.put("device", android.os.Build.MANUFACTURER + " " + android.os.Build.MODEL);
+        ret.put("window", CaptureTimings.WINDOW);
+        ret.put("bucketBoundsMs", bounds);
+        ret.put("stages", stages);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void resetCaptureTimings(PluginCall call) {
+        captureTimings.reset();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void setWatermark(PluginCall call) {
+        String image = call.getString("image");
+        if (image == null || image.isEmpty()) {
+            watermark = null;
+        } else {
+            String position = call.getString("position", "bottom-right");
+            Float scale = call.getFloat("scale", 0.25f);
+            Float opacity = call.getFloat("opacity", 1f);
+            if (!Arrays.asList("top-left", "top-right", "bottom-left", "bottom-right", "center").contains(position)) {
+                call.reject("position must be one of top-left, top-right, bottom-left, bottom-right, center");
+                return;
+            }
+            if (scale == null || scale <= 0 || scale > 1) {
+                call.reject("scale must be greater than 0 and at most 1");
+                return;
+            }
+            if (opacity == null || opacity < 0 || opacity > 1) {
+                call.reject("opacity must be between 0 and 1");
+                return;
+            }
+            Bitmap bitmap;
+            try {
+                if (image.startsWith("/") || image.startsWith("file://")) {
+                    bitmap = BitmapFactory.decodeFile(Uri.parse(image).getPath());
+                } else {
+                    // Base64, with or without a data URL prefix
+                    int comma = image.startsWith("data:") ? image.indexOf(',') : -1;
+                    byte[] bytes = Base64.decode(image.substring(comma + 1), Base64.DEFAULT);
+                    bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                }
+            } catch (IllegalArgumentException e) {
+                bitmap = null;
+            }
+            if (bitmap == null) {
+                call.reject("Unable to decode watermark image");
+                return;
+            }
+            watermark = new OverlayRenderer.Watermark(bitmap, position, scale, opacity);
+        }
+        if (cameraXView != null) {
+            cameraXView.setWatermark(watermark);
+        }
+        call.resolve();
+    }
+
+    private synchronized CaptureStore getCaptureStore() {
+        if (captureStore == null) {
+            captureStore = new CaptureStore(
+                new java.io.File(getContext().getCacheDir(), "camera-preview"),
+                CaptureStore.DEFAULT_MAX_BYTES
+            );
+        }
+        return captureStore;
+    }
+
+    private synchronized GallerySaver getGallerySaver() {
+        if (gallerySaver == null) {
+            gallerySaver = new GallerySaver(getContext(), this::onGallerySaveBatch);
+        }
+        return gallerySaver;
+    }
+
+    private void onGallerySaveBatch(List<GallerySaver.Result> results) {
+        JSArray items = new JSArray();
+        int failed = 0;
+        for (GallerySaver.Result result : results) {
+            JSObject item = new JSObject();
+            item.put("captureId", result.captureId);
+            if (result.uri != null) {
+                item.put("uri", result.uri);
+            } else {
+                item.put("error", result.error);
+                failed++;
+            }
+            items.put(item);
+        }
+        JSObject data = new JSObject();
+        data.put("items", items);
+        data.put("failed", failed);
+        notifyListeners("gallerySave", data);
+    }
+
+    @PluginMethod
+    public void getCaptureCacheStats(PluginCall call) {
+        long[] stats = getCaptureStore().stats();
+        JSObject ret = new JSObject();
+        ret.put("files", stats[0]);
+        ret.put("bytes", stats[1]);
+        ret.put("maxBytes", stats[2]);
+        ret.put("evictedFiles", stats[3]);
+        ret.put("evictedBytes", stats[4]);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void setCaptureCacheLimit(PluginCall call) {
+        Double maxBytes = call.getDouble("maxBytes");
+        if (maxBytes == null || maxBytes < 0) {
+            call.reject("maxBytes must be a non-negative number");
+            return;
+        }
+        getCaptureStore().setMaxBytes(maxBytes.longValue());
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void purgeCaptureCache(PluginCall call) {
+        Double olderThanMs = call.getDouble("olderThanMs", 0.0);
+        if (olderThanMs == null || olderThanMs < 0) {
+            call.reject("olderThanMs must be a non-negative number");
+            return;
+        }
+        long[] purged = getCaptureStore().purge(olderThanMs.longValue());
+        JSObject ret = new JSObject();
+        ret.put("deletedFiles", purged[0]);
+        ret.put("freedBytes", purged[1]);
+        call.resolve(ret);
+    }
+
     @PluginMethod
     public void startRecordVideo(PluginCall call) {
         if (cameraXView == null || !cameraXView.isRunning()) {
@@ -6,21 +6,21 @@ import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.GradientDrawable;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
 import android.location.Location;
-import android.media.MediaScannerConnection;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Base64;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -91,25 +91,49 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class CameraXView implements LifecycleOwner, LifecycleObserver {
 
     private static final String TAG = "CameraPreview CameraXView";
     private static final String FOCUS_INDICATOR_TAG = "cpcp_focus_indicator";
+    // Capture rotation to be read from the JPEG's EXIF orientation (OutputFileOptions path)
+    private static final int ROTATION_FROM_EXIF = -1;
 
     public interface CameraXViewListener {
-        void onPictureTaken(String base64, JSONObject exif);
-        void onPictureTakenError(String message);
-        void onSampleTaken(String result);
-        void onSampleTakenError(String message);
+        void onPictureTaken(String requestId, String result, JSONObject exif, Map<String, Double> timings, long peakBytes);
+        void onPictureThumbnail(String requestId, String base64, int width, int height);
+        void onPictureTakenError(String requestId, String message);
+        void onSampleTaken(String requestId, String result, long ageMs);
+        void onSampleTakenError(String requestId, String message);
+        void onStreamFrame(
+            long frameId,
+            String base64,
+            int width,
+            int height,
+            long droppedFrames,
+            double sceneDiff,
+            long unchangedFrames
+        );
+        void onFrameProcessorResult(String name, JSONObject result);
+        void onBurstProgress(String requestId, int index, int count, String path, String error);
+        void onBurstComplete(String requestId, List<String> paths, int failed);
+        void onBurstError(String requestId, String message);
         void onCameraStarted(int width, int height, int x, int y);
         void onCameraStartError(String message);
         void onCameraStopped(CameraXView source);
@@ -120,6 +144,11 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         void onError(String message);
     }
 
+    public interface CaptureModeCallback {
+        void onSuccess(String effectiveMode);
+        void onError(String message);
+    }
+
     private ProcessCameraProvider cameraProvider;
     private Camera camera;
     private ImageCapture imageCapture;
@@ -137,13 +166,27 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     private CameraSelector currentCameraSelector;
     private String currentDeviceId;
     private int currentFlashMode = ImageCapture.FLASH_MODE_OFF;
+    private ResolutionSelector captureResolutionSelector; // kept to rebuild ImageCapture on mode changes
+    private volatile int effectiveCaptureMode = ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY;
     private CameraSessionConfiguration sessionConfig;
     private CameraXViewListener listener;
     private final Context context;
     private final WebView webView;
     private final LifecycleRegistry lifecycleRegistry;
     private final Executor mainExecutor;
-    private ExecutorService cameraExecutor;
+    // Execution lanes, one thread each, created per session:
+    // - analysisExecutor: ImageAnalysis analyzer. Owns the frame processors and framePool; never blocked by captures.
+    // - captureExecutor: takePicture callbacks only; copies the JPEG out and frees the camera buffer.
+    // - processExecutor: photo post-processing (decode, transform, encode, EXIF), in shutter order.
+    // - ioExecutor: disk writes (storeToFile output, gallery saves), in submission order; drained on stop.
+    // - thumbnailExecutor: progressive capture thumbnails, so they neither hold up the capture lane
+    //   nor wait behind full-resolution processing.
+    // Camera binding always happens on mainExecutor, never on these lanes.
+    private ExecutorService analysisExecutor;
+    private ExecutorService captureExecutor;
+    private ExecutorService processExecutor;
+    private ExecutorService ioExecutor;
+    private ExecutorService thumbnailExecutor;
     private boolean isRunning = false;
     private Size currentPreviewResolution = null;
     private ListenableFuture<FocusMeteringResult> currentFocusFuture = null; // Track current focus operation
@@ -152,6 +195,27 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     private final Object captureLock = new Object();
     private volatile boolean isCapturingPhoto = false;
     private volatile boolean stopRequested = false;
+    // Pipelined capture: up to maxCapturesInFlight photos between takePicture and delivery, so the
+    // sensor takes photo N+1 while photo N is post-processed. Results are delivered in shutter order.
+    static final int DEFAULT_MAX_CAPTURES_IN_FLIGHT = 3;
+    private volatile int maxCapturesInFlight = DEFAULT_MAX_CAPTURES_IN_FLIGHT;
+    private volatile CaptureStore captureStore; // where storeToFile and burst files are written
+    private volatile GallerySaver gallerySaver; // saveToGallery captures
+    private volatile CaptureTimings captureTimings; // rolling stage latencies of capturePhoto
+    private final OverlayRenderer overlayRenderer = new OverlayRenderer(); // timestamp, location, watermark
+    private volatile long captureMemoryBudget = StripEncoder.defaultBudget(); // bytes per re-encoded capture
+    private int capturesInFlight = 0; // guarded by captureLock
+    private long nextCaptureSequence = 0; // guarded by captureLock
+    private final Object captureDeliveryLock = new Object();
+    private long nextDeliverySequence = 0; // guarded by captureDeliveryLock
+    private final TreeMap<Long, Runnable> readyCaptureResults = new TreeMap<>(); // guarded by captureDeliveryLock
+
+    // === Burst capture ===
+    // One burst at a time. The sensor takes one frame at a time, at most every intervalMs; while
+    // maxCapturesInFlight frames wait for processing or writing, the next shot is held back.
+    private final Object burstLock = new Object();
+    private BurstState activeBurst = null; // guarded by burstLock
+    private final Handler burstHandler = new Handler(Looper.getMainLooper());
     private volatile boolean previewDetachedOnDeferredStop = false;
 
     // Operation coordination (acts like a semaphore to prevent stop during active ops)
@@ -159,15 +223,208 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     private int activeOperations = 0;
     private boolean stopPending = false;
 
-    // === NEW: ImageAnalysis Gatekeeping variables ===
+    // === ImageAnalysis sample queue ===
+    // Pending sample requests keyed by request id (the plugin call id). Every request queued when a
+    // frame arrives is served from that same frame, so concurrent callers share frames instead of failing.
+    private static final int MAX_PENDING_SAMPLE_REQUESTS = 16;
     private final Object analysisLock = new Object();
-    private volatile boolean captureNextFrame = false;
-    private volatile BitmapProcessor pendingProcessor = null;
-    private volatile int pendingQuality = 100;
-    // ================================================
+    private final LinkedHashMap<String, SampleRequest> pendingSampleRequests = new LinkedHashMap<>();
+    // Reusable bitmaps and buffers for the analyzer hot path; analyzer thread only
+    private final FrameBufferPool framePool = new FrameBufferPool();
+    // Native frame processors, in registration order; the snapshot processor is always first.
+    // Copy-on-write under analysisLock so the analyzer iterates without locking.
+    private static final String SNAPSHOT_PROCESSOR = "snapshot";
+    private volatile FrameProcessorSlot[] frameProcessorSlots = new FrameProcessorSlot[] {
+        new FrameProcessorSlot(SNAPSHOT_PROCESSOR, new SnapshotProcessor(), 0, 0)
+    };
+    // Continuous frame stream (null when not streaming); guarded by analysisLock
+    private FrameStreamState frameStream = null;
+    // Latest-frame cache serving captureSample without waiting for a frame (null when disabled); guarded by analysisLock
+    private SampleCacheState sampleCache = null;
+    // ==================================
+
+    // Chooses the frame region (crop + output size) a sample needs, before any RGB conversion.
+    // Returning null means the full frame at analysis resolution.
+    private interface FrameRegionSelector {
+        YuvFrameConverter.Region select(int frameWidth, int frameHeight);
+    }
 
-    private interface BitmapProcessor {
-        Bitmap process(Bitmap original);
+    private static final class FrameStreamState {
+
+        final long minIntervalNanos;
+        final long ackTimeoutNanos;
+        final int size;
+        final int quality;
+        long lastEmitNanos = Long.MIN_VALUE / 2;
+        long lastFrameId = 0;
+        long inFlightFrameId = 0;
+        long inFlightSinceNanos = 0;
+        long framesSent = 0;
+        long framesDropped = 0;
+        // Scene-change gate: frames whose luma signature differs from the last emitted frame by
+        // less than the threshold are skipped (0 = disabled). Detector is analyzer thread only.
+        final double sceneChangeThreshold;
+        final SceneChangeDetector sceneDetector;
+        long framesUnchanged = 0;
+
+        FrameStreamState(int maxFps, int size, int quality, long ackTimeoutMs, double sceneChangeThreshold) {
+            this.minIntervalNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+            this.ackTimeoutNanos = Math.max(0, ackTimeoutMs) * 1_000_000L;
+            this.size = size;
+            this.quality = quality;
+            this.sceneChangeThreshold = Math.max(0, sceneChangeThreshold);
+            this.sceneDetector = this.sceneChangeThreshold > 0 ? new SceneChangeDetector() : null;
+        }
+    }
+
+    // Scheduling state and counters of one registered processor. Scheduling fields are only
+    // touched on the analyzer thread; counters are read elsewhere under the slot's monitor.
+    private static final class FrameProcessorSlot {
+
+        final String name;
+        final FrameProcessor processor;
+        final int frameSkip;
+        final long budgetNanos;
+        int framesUntilRun = 0;
+        long framesProcessed = 0;
+        long framesSkipped = 0;
+        long overBudgetRuns = 0;
+        long totalNanos = 0;
+        long lastNanos = 0;
+
+        FrameProcessorSlot(String name, FrameProcessor processor, int frameSkip, long budgetMs) {
+            this.name = name;
+            this.processor = processor;
+            this.frameSkip = Math.max(0, frameSkip);
+            this.budgetNanos = Math.max(0, budgetMs) * 1_000_000L;
+        }
+
+        boolean isDue() {
+            if (framesUntilRun > 0) {
+                framesUntilRun--;
+                synchronized (this) {
+                    framesSkipped++;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        // The processor had nothing to do: check again on the next frame
+        void idle() {
+            framesUntilRun = 0;
+        }
+
+        void recordRun(long elapsedNanos) {
+            int extraSkip = 0;
+            boolean overBudget = budgetNanos > 0 && elapsedNanos > budgetNanos;
+            if (overBudget) {
+                // Push the next run back so the processor averages out to its budget
+                extraSkip = (int) Math.min(Integer.MAX_VALUE, (elapsedNanos - 1) / budgetNanos);
+            }
+            framesUntilRun = frameSkip + extraSkip;
+            synchronized (this) {
+                framesProcessed++;
+                totalNanos += elapsedNanos;
+                lastNanos = elapsedNanos;
+                if (overBudget) overBudgetRuns++;
+            }
+        }
+
+        synchronized JSONObject stats() throws JSONException {
+            JSONObject stats = new JSONObject();
+            stats.put("name", name);
+            stats.put("frameSkip", frameSkip);
+            stats.put("budgetMs", budgetNanos / 1_000_000L);
+            stats.put("framesProcessed", framesProcessed);
+            stats.put("framesSkipped", framesSkipped);
+            stats.put("overBudgetRuns", overBudgetRuns);
+            stats.put("averageMs", framesProcessed > 0 ? totalNanos / 1e6 / framesProcessed : 0);
+            stats.put("lastMs", lastNanos / 1e6);
+            return stats;
+        }
+    }
+
+    private static final class BurstState {
+
+        final String requestId;
+        final int count;
+        final long intervalMs;
+        final Integer quality;
+        final List<String> paths = new ArrayList<>();
+        // Guarded by burstLock
+        int shotsTaken = 0;
+        int queued = 0; // taken but not yet written
+        int completed = 0;
+        int failed = 0;
+        long lastShotNanos = 0;
+        boolean shotPending = false;
+        boolean timerPending = false;
+        boolean stopped = false;
+        boolean finished = false;
+
+        BurstState(String requestId, int count, long intervalMs, Integer quality) {
+            this.requestId = requestId;
+            this.count = count;
+            this.intervalMs = intervalMs;
+            this.quality = quality;
+        }
+
+        // Every taken frame is accounted for and no more will be taken
+        boolean isDone() {
+            return completed == shotsTaken && (shotsTaken >= count || stopped);
+        }
+    }
+
+    private static final class SampleCacheState {
+
+        final long minIntervalNanos;
+        final int size;
+        final int quality;
+        long lastRefreshNanos = Long.MIN_VALUE / 2;
+        String base64 = null;
+        long cachedAtNanos = 0;
+
+        SampleCacheState(int maxFps, int size, int quality) {
+            this.minIntervalNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+            this.size = size;
+            this.quality = quality;
+        }
+    }
+
+    private static final class SampleRequest {
+
+        final String id;
+        final String format;
+        final int quality;
+        final FrameRegionSelector region;
+        // Sharpest-of-N selection: score up to selectFrames frames / selectWindowNanos and return the best
+        final int selectFrames;
+        final long selectWindowNanos;
+        // Selection state; analyzer thread only
+        int framesScored = 0;
+        long firstFrameNanos = 0;
+        double bestScore = -1;
+        Bitmap best = null;
+
+        SampleRequest(String id, String format, int quality, FrameRegionSelector region, int selectFrames, long selectWindowMs) {
+            this.id = id;
+            this.format = format;
+            this.quality = quality;
+            this.region = region;
+            this.selectFrames = Math.max(1, selectFrames);
+            this.selectWindowNanos = Math.max(0, selectWindowMs) * 1_000_000L;
+        }
+
+        boolean selectsSharpest() {
+            return selectFrames > 1 || selectWindowNanos > 0;
+        }
+
+        boolean selectionDone(long nowNanos) {
+            if (selectWindowNanos > 0 && nowNanos - firstFrameNanos >= selectWindowNanos) return true;
+            // A window without a frame count runs until the window closes
+            return selectFrames > 1 ? framesScored >= selectFrames : selectWindowNanos == 0;
+        }
     }
 
     private boolean IsOperationRunning(String name) {
@@ -250,105 +507,21 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         return previewContainer;
     }
 
-    private void saveImageToGallery(byte[] data) {
-        try {
-            // Detect image format from byte array header
-            String extension = ".jpg";
-            String mimeType = "image/jpeg";
-
-            if (data.length >= 8) {
-                // Check for PNG signature (89 50 4E 47 0D 0A 1A 0A)
-                if (data[0] == (byte) 0x89 && data[1] == 0x50 && data[2] == 0x4E && data[3] == 0x47) {
-                    extension = ".png";
-                    mimeType = "image/png";
-                }
-                // Check for JPEG signature (FF D8 FF)
-                else if (data[0] == (byte) 0xFF && data[1] == (byte) 0xD8 && data[2] == (byte) 0xFF) {
-                    extension = ".jpg";
-                    mimeType = "image/jpeg";
-                }
-                // Check for WebP signature (RIFF ... WEBP)
-                else if (
-                    data[0] == 0x52 &&
-                    data[1] == 0x49 &&
-                    data[2] == 0x46 &&
-                    data[3] == 0x46 &&
-                    data.length >= 12 &&
-                    data[8] == 0x57 &&
-                    data[9] == 0x45 &&
-                    data[10] == 0x42 &&
-                    data[11] == 0x50
-                ) {
-                    extension = ".webp";
-                    mimeType = "image/webp";
-                }
-            }
-
-            File photo = new File(
-                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES),
-                "IMG_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new java.util.Date()) + extension
-            );
-            FileOutputStream fos = new FileOutputStream(photo);
-            fos.write(data);
-            fos.close();
-
-            // Notify the gallery of the new image
-            MediaScannerConnection.scanFile(this.context, new String[] { photo.getAbsolutePath() }, new String[] { mimeType }, null);
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving image to gallery", e);
-        }
-    }
-
-    private void saveImageToGallery(byte[] data, ExifInterface sourceExif, Integer finalWidth, Integer finalHeight) {
-        try {
-            // First, write the bytes to a file
-            String extension = ".jpg";
-            String mimeType = "image/jpeg";
-            if (data.length >= 8) {
-                if (data[0] == (byte) 0x89 && data[1] == 0x50 && data[2] == 0x4E && data[3] == 0x47) {
-                    extension = ".png";
-                    mimeType = "image/png";
-                } else if (data[0] == (byte) 0xFF && data[1] == (byte) 0xD8 && data[2] == (byte) 0xFF) {
-                    extension = ".jpg";
-                    mimeType = "image/jpeg";
-                } else if (
-                    data[0] == 0x52 &&
-                    data[1] == 0x49 &&
-                    data[2] == 0x46 &&
-                    data[3] == 0x46 &&
-                    data.length >= 12 &&
-                    data[8] == 0x57 &&
-                    data[9] == 0x45 &&
-                    data[10] == 0x42 &&
-                    data[11] == 0x50
-                ) {
-                    extension = ".webp";
-                    mimeType = "image/webp";
-                }
-            }
-
-            File photo = new File(
-                Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES),
-                "IMG_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new java.util.Date()) + extension
-            );
-
-            FileOutputStream fos = new FileOutputStream(photo);
-            fos.write(data);
-            fos.flush();
-            fos.close();
-
-            // No EXIF rewrite here; bytes already contain EXIF when needed
-
-            // Notify the gallery of the new image
-            MediaScannerConnection.scanFile(this.context, new String[] { photo.getAbsolutePath() }, new String[] { mimeType }, null);
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving image to gallery (with exif)", e);
-        }
+    private static ExecutorService newLaneExecutor(String lane) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CameraPreview-" + lane);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public void startSession(CameraSessionConfiguration config) {
         this.sessionConfig = config;
-        cameraExecutor = Executors.newSingleThreadExecutor();
+        analysisExecutor = newLaneExecutor("analysis");
+        captureExecutor = newLaneExecutor("capture");
+        processExecutor = newLaneExecutor("process");
+        ioExecutor = newLaneExecutor("io");
+        thumbnailExecutor = newLaneExecutor("thumbnail");
         synchronized (operationLock) {
             activeOperations = 0;
             stopPending = false;
@@ -404,6 +577,9 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
             currentFocusFuture.cancel(true);
         }
         currentFocusFuture = null;
+        failPendingSampleRequests("Camera stopped");
+        stopFrameStream();
+        disableSampleCache();
 
         mainExecutor.execute(() -> {
             try {
@@ -412,8 +588,25 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                     cameraProvider.unbindAll();
                 }
                 lifecycleRegistry.setCurrentState(Lifecycle.State.DESTROYED);
-                if (cameraExecutor != null) {
-                    cameraExecutor.shutdown();
+                if (analysisExecutor != null) {
+                    // Release pooled analyzer buffers on the analyzer thread, then stop it
+                    analysisExecutor.execute(framePool::clear);
+                    analysisExecutor.shutdown();
+                }
+                if (captureExecutor != null) {
+                    captureExecutor.shutdown();
+                }
+                if (processExecutor != null) {
+                    // Drop cached overlay bitmaps once queued photos are processed
+                    processExecutor.execute(overlayRenderer::release);
+                    processExecutor.shutdown();
+                }
+                if (ioExecutor != null) {
+                    // Already queued writes still complete
+                    ioExecutor.shutdown();
+                }
+                if (thumbnailExecutor != null) {
+                    thumbnailExecutor.shutdown();
                 }
                 removePreviewView();
             } catch (Exception e) {
@@ -730,6 +923,151 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         webView.setBackgroundColor(android.graphics.Color.WHITE);
     }
 
+    // Analysis gets its own selector when a resolution or aspect ratio is configured for it, so the
+    // sample stream does not have to run at full sensor resolution alongside preview and capture
+    private ResolutionSelector buildAnalysisResolutionSelector(ResolutionSelector shared) {
+        int width = sessionConfig.getAnalysisWidth();
+        int height = sessionConfig.getAnalysisHeight();
+        String analysisAspectRatio = sessionConfig.getAnalysisAspectRatio();
+        boolean hasResolution = width > 0 && height > 0;
+        if (!hasResolution && analysisAspectRatio == null) {
+            return shared;
+        }
+
+        ResolutionSelector.Builder builder = new ResolutionSelector.Builder();
+        if (hasResolution) {
+            builder.setResolutionStrategy(
+                new ResolutionStrategy(new Size(width, height), ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER)
+            );
+        } else {
+            builder.setResolutionStrategy(ResolutionStrategy.HIGHEST_AVAILABLE_STRATEGY);
+        }
+        String aspect = analysisAspectRatio != null ? analysisAspectRatio : sessionConfig.getAspectRatio();
+        if (aspect != null) {
+            int aspectRatio = "16:9".equals(aspect) ? AspectRatio.RATIO_16_9 : AspectRatio.RATIO_4_3;
+            builder.setAspectRatioStrategy(new AspectRatioStrategy(aspectRatio, AspectRatioStrategy.FALLBACK_RULE_AUTO));
+        }
+        return builder.build();
+    }
+
+    /** Resolution the analysis stream was bound at, in sensor orientation, or null when it is not bound. */
+    public Size getAnalysisResolution() {
+        ImageAnalysis analysis = imageAnalysis;
+        if (analysis == null) return null;
+        ResolutionInfo info = analysis.getResolutionInfo();
+        return info != null ? info.getResolution() : null;
+    }
+
+    // Main thread. ImageCapture in the session's capture mode, probed against the selected camera
+    private ImageCapture buildImageCapture(int rotation) {
+        CameraInfo info = null;
+        try {
+            info = cameraProvider.getCameraInfo(currentCameraSelector);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "buildImageCapture: no camera info to probe the capture mode", e);
+        }
+        effectiveCaptureMode = resolveCaptureMode(sessionConfig.getCaptureMode(), info);
+        Log.d(TAG, "buildImageCapture: mode " + sessionConfig.getCaptureMode() + " -> " + captureModeName(effectiveCaptureMode));
+        return new ImageCapture.Builder()
+            .setResolutionSelector(captureResolutionSelector)
+            .setCaptureMode(effectiveCaptureMode)
+            .setFlashMode(currentFlashMode)
+            .setTargetRotation(rotation)
+            .build();
+    }
+
+    // Zero-shutter-lag falls back to minimize-latency on cameras without ZSL support
+    private static int resolveCaptureMode(String mode, CameraInfo info) {
+        if ("maximizeQuality".equals(mode)) {
+            return ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY;
+        }
+        if ("zeroShutterLag".equals(mode)) {
+            if (info != null && info.isZslSupported()) {
+                return ImageCapture.CAPTURE_MODE_ZERO_SHUTTER_LAG;
+            }
+            Log.d(TAG, "resolveCaptureMode: zero-shutter-lag not supported, using minimizeLatency");
+        }
+        return ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY;
+    }
+
+    static String captureModeName(int mode) {
+        switch (mode) {
+            case ImageCapture.CAPTURE_MODE_MAXIMIZE_QUALITY:
+                return "maximizeQuality";
+            case ImageCapture.CAPTURE_MODE_ZERO_SHUTTER_LAG:
+                return "zeroShutterLag";
+            default:
+                return "minimizeLatency";
+        }
+    }
+
+    /** The mode ImageCapture is bound with, after the fallback for unsupported modes. */
+    public String getEffectiveCaptureMode() {
+        return captureModeName(effectiveCaptureMode);
+    }
+
+    /** Whether the bound camera supports zeroShutterLag. */
+    public boolean isZslSupported() {
+        Camera c = camera;
+        return c != null && c.getCameraInfo().isZslSupported();
+    }
+
+    /**
+     * Switches the capture mode by rebinding ImageCapture alone; preview, analysis and any frame
+     * stream keep running. Fails while photos are in flight, since unbinding would abort them.
+     */
+    public void setCaptureMode(String mode, CaptureModeCallback callback) {
+        mainExecutor.execute(() -> {
+            synchronized (captureLock) {
+                if (capturesInFlight > 0) {
+                    callback.onError("Cannot change the capture mode while photos are being captured");
+                    return;
+                }
+            }
+            synchronized (burstLock) {
+                if (activeBurst != null) {
+                    callback.onError("Cannot change the capture mode while a burst is running");
+                    return;
+                }
+            }
+            String previousRequest = sessionConfig.getCaptureMode();
+            sessionConfig.setCaptureMode(mode);
+            ImageCapture current = imageCapture;
+            if (cameraProvider == null || camera == null || current == null || !cameraProvider.isBound(current)) {
+                // Not bound (e.g. video mode): applied at the next bind
+                callback.onSuccess(mode);
+                return;
+            }
+            int previousMode = effectiveCaptureMode;
+            ImageCapture replacement = buildImageCapture(current.getTargetRotation());
+            if (effectiveCaptureMode == previousMode) {
+                callback.onSuccess(captureModeName(effectiveCaptureMode));
+                return;
+            }
+            cameraProvider.unbind(current);
+            try {
+                camera = cameraProvider.bindToLifecycle(this, currentCameraSelector, replacement);
+                imageCapture = replacement;
+                sampleImageCapture = replacement;
+                callback.onSuccess(captureModeName(effectiveCaptureMode));
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "setCaptureMode: rebinding failed, restoring the previous ImageCapture", e);
+                sessionConfig.setCaptureMode(previousRequest);
+                effectiveCaptureMode = previousMode;
+                try {
+                    camera = cameraProvider.bindToLifecycle(this, currentCameraSelector, current);
+                } catch (RuntimeException restoreError) {
+                    Log.e(TAG, "setCaptureMode: restoring the previous ImageCapture failed", restoreError);
+                    callback.onError(
+                        "Capture mode change failed and the camera could not be restored: " + restoreError.getMessage()
+                    );
+                    return;
+                }
+                callback.onError("Capture mode not supported with the current use cases: " + e.getMessage());
+            }
+        });
+    }
+
      @OptIn(markerClass = ExperimentalCamera2Interop.class)
     private void bindCameraUseCases() {
         // 1. Safety Checks
@@ -756,6 +1094,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                     );
                 }
                 ResolutionSelector resolutionSelector = resolutionSelectorBuilder.build();
+                ResolutionSelector analysisResolutionSelector = buildAnalysisResolutionSelector(resolutionSelector);
 
                 // --- C. Get Rotation ---
                 int rotation = previewView.getDisplay() != null
@@ -770,72 +1109,26 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
 
                 // --- E. Build ImageCapture Use Case (Standard/Loud) ---
                 // We keep this for high-res photos with Flash support
-                imageCapture = new ImageCapture.Builder()
-                    .setResolutionSelector(resolutionSelector)
-                    .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
-                    .setFlashMode(currentFlashMode)
-                    .setTargetRotation(rotation)
-                    .build();
-                
+                captureResolutionSelector = resolutionSelector;
+                imageCapture = buildImageCapture(rotation);
+
                 sampleImageCapture = imageCapture; // KEEP for backward compatibility
 
                 // --- F. Build ImageAnalysis Use Case (Silent/Fast) ---
                 // This acts as the silent snapshot engine
                 imageAnalysis = new ImageAnalysis.Builder()
-                    .setResolutionSelector(resolutionSelector)
+                    .setResolutionSelector(analysisResolutionSelector)
                     // STRATEGY_KEEP_ONLY_LATEST prevents queue buildup.
                     // If the analyzer is busy, new frames are dropped.
                     .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                    .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888) // Direct Bitmap friendly
+                    // Stay in YUV: frames nobody asked for are never converted, and crops/downscales
+                    // are applied on the planes so only output-sized pixels get converted to RGB.
+                    .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
                     .setTargetRotation(rotation)
                     .build();
 
                 // Define the Analyzer (The "Worker")
-                imageAnalysis.setAnalyzer(cameraExecutor, imageProxy -> {
-                    synchronized (analysisLock) {
-                        // 1. GATEKEEPER: If no snapshot requested, discard immediately.
-                        if (!captureNextFrame) {
-                            imageProxy.close();
-                            return;
-                        }
-
-                        // 2. PROCESSING: Snapshot requested!
-                        try {
-                            Log.d(TAG, "ImageAnalysis: Processing requested frame");
-
-                            // Convert YUV/HardwareBuffer to Bitmap
-                            Bitmap bitmap = imageProxy.toBitmap();
-
-                            // Apply Crop/Resize if a processor was provided
-                            Bitmap finalBitmap = (pendingProcessor != null)
-                                ? pendingProcessor.process(bitmap)
-                                : bitmap;
-
-                            // Compress to Base64
-                            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                            finalBitmap.compress(Bitmap.CompressFormat.JPEG, pendingQuality, outputStream);
-                            byte[] bytes = outputStream.toByteArray();
-                            String base64 = Base64.encodeToString(bytes, Base64.NO_WRAP);
-
-                            // Memory Cleanup
-                            if (bitmap != finalBitmap) bitmap.recycle();
-
-                            // Return result to Capacitor/JS
-                            if (listener != null) {
-                                listener.onSampleTaken(base64);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "ImageAnalysis processing error", e);
-                            if (listener != null) listener.onSampleTakenError(e.getMessage());
-                        } finally {
-                            // 3. RESET: Close the gate and the image
-                            captureNextFrame = false;
-                            pendingProcessor = null;
-                            imageProxy.close(); // CRITICAL: Must close to receive next frame
-                            endOperation("captureSample");
-                        }
-                    }
-                });
+                imageAnalysis.setAnalyzer(analysisExecutor, this::analyzeFrame);
 
                 // --- G. Build VideoCapture (Optional) ---
                 if (sessionConfig.isVideoModeEnabled()) {
@@ -906,6 +1199,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                 // Log Camera Info
                 CameraInfo cameraInfo = camera.getCameraInfo();
                 Log.d(TAG, "Bound Camera ID: " + Camera2CameraInfo.from(cameraInfo).getCameraId());
+                Log.d(TAG, "Analysis resolution: " + getAnalysisResolution());
 
                 // Apply Scale Type
                 String ar = sessionConfig != null ? sessionConfig.getAspectRatio() : null;
@@ -971,17 +1265,21 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     }
 
     public void capturePhoto(
+        final String requestId,
+        final String format,
         int quality,
         final boolean saveToGallery,
         Integer width,
         Integer height,
         Location location,
         final boolean embedTimestamp,
-        final boolean embedLocation
+        final boolean embedLocation,
+        final Integer thumbnailSize,
+        final String[][] exifTags
     ) {
         if (imageCapture == null) {
             if (listener != null) {
-                listener.onPictureTakenError("Camera not ready");
+                listener.onPictureTakenError(requestId, "Camera not ready");
             }
             return;
         }
@@ -989,12 +1287,36 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         // Prevent capture if a stop is pending
         if (IsOperationRunning("capturePhoto")) {
             Log.d(TAG, "capturePhoto: Ignored because stop is pending");
+            if (listener != null) {
+                listener.onPictureTakenError(requestId, "Camera is stopping");
+            }
+            return;
+        }
+
+        final long sequence;
+        synchronized (captureLock) {
+            if (capturesInFlight >= maxCapturesInFlight) {
+                sequence = -1;
+            } else {
+                capturesInFlight++;
+                isCapturingPhoto = true;
+                sequence = nextCaptureSequence++;
+            }
+        }
+        if (sequence < 0) {
+            Log.d(TAG, "capturePhoto rejected: " + maxCapturesInFlight + " captures already in flight");
+            endOperation("capturePhoto");
+            if (listener != null) {
+                listener.onPictureTakenError(requestId, "Too many captures in flight");
+            }
             return;
         }
 
         Log.d(
             TAG,
             "capturePhoto: Starting photo capture with: " +
+                format +
+                ", quality: " +
                 quality +
                 ", width: " +
                 width +
@@ -1005,317 +1327,739 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                 ", embedTimestamp: " +
                 embedTimestamp +
                 ", embedLocation: " +
-                embedLocation
+                embedLocation +
+                ", thumbnailSize: " +
+                thumbnailSize
         );
 
-        boolean dispatched = false;
+        // Stage timings start at the shutter request
+        final CaptureTimings.Trace trace = new CaptureTimings.Trace();
         try {
-            synchronized (captureLock) {
-                isCapturingPhoto = true;
-            }
-
-            final ByteArrayOutputStream imageStream = new ByteArrayOutputStream();
-            ImageCapture.Metadata metadata = new ImageCapture.Metadata();
-            if (location != null) {
-                metadata.setLocation(location);
-            }
-            ImageCapture.OutputFileOptions outputFileOptions = new ImageCapture.OutputFileOptions.Builder(imageStream)
-                .setMetadata(metadata)
-                .build();
-
-            imageCapture.takePicture(
-                outputFileOptions,
-                cameraExecutor,
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        Log.e(TAG, "capturePhoto: Photo capture failed", exception);
-                        if (listener != null) {
-                            listener.onPictureTakenError("Photo capture failed: " + exception.getMessage());
-                        }
-                        // End of capture lifecycle
-                        synchronized (captureLock) {
-                            isCapturingPhoto = false;
-                            if (stopRequested) {
-                                performImmediateStop();
+            if (location == null) {
+                // Nothing for CameraX to add to the EXIF: read the JPEG straight from the capture buffer,
+                // skipping the encoder's output stream and its extra copy
+                imageCapture.takePicture(
+                    captureExecutor,
+                    new ImageCapture.OnImageCapturedCallback() {
+                        @Override
+                        public void onCaptureSuccess(@NonNull ImageProxy image) {
+                            trace.lap("shutter");
+                            byte[] jpeg;
+                            int rotation;
+                            try {
+                                jpeg = readJpegBuffer(image);
+                                rotation = image.getImageInfo().getRotationDegrees();
+                            } catch (Exception e) {
+                                Log.e(TAG, "capturePhoto: Unable to read captured image", e);
+                                failCapture(sequence, requestId, "Error processing image: " + e.getMessage());
+                                return;
+                            } finally {
+                                // Frees the capture slot before the (slower) post-processing
+                                image.close();
                             }
-                        }
-                        endOperation("capturePhoto");
-                    }
-
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults output) {
-                        try {
-                            byte[] originalCaptureBytes = imageStream.toByteArray();
-                            byte[] bytes = originalCaptureBytes; // will be replaced if we transform
-                            int finalWidthOut = -1;
-                            int finalHeightOut = -1;
-                            boolean transformedPixels = false;
-
-                            ExifInterface exifInterface = new ExifInterface(new ByteArrayInputStream(originalCaptureBytes));
-                            // Build EXIF JSON from captured bytes (location applied by metadata if provided)
-                            JSONObject exifData = getExifData(exifInterface);
-
-                            if (width != null || height != null) {
-                                Bitmap bitmap = BitmapFactory.decodeByteArray(originalCaptureBytes, 0, originalCaptureBytes.length);
-                                bitmap = applyExifOrientation(bitmap, exifInterface);
-                                Bitmap resizedBitmap = resizeBitmapToMaxDimensions(bitmap, width, height);
-                                if (embedTimestamp || embedLocation) {
-                                    resizedBitmap = drawTimestampAndLocationOntoBitmap(
-                                        resizedBitmap,
-                                        exifInterface,
-                                        embedTimestamp,
-                                        embedLocation
-                                    );
-                                }
-                                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                                resizedBitmap.compress(Bitmap.CompressFormat.JPEG, quality, stream);
-                                bytes = stream.toByteArray();
-                                transformedPixels = true;
-
-                                // Update EXIF JSON to reflect new dimensions; no in-place EXIF write to bytes
-                                try {
-                                    exifData.put("PixelXDimension", resizedBitmap.getWidth());
-                                    exifData.put("PixelYDimension", resizedBitmap.getHeight());
-                                    exifData.put("ImageWidth", resizedBitmap.getWidth());
-                                    exifData.put("ImageLength", resizedBitmap.getHeight());
-                                    exifData.put("Orientation", Integer.toString(ExifInterface.ORIENTATION_NORMAL));
-                                } catch (Exception ignore) {}
-                                finalWidthOut = resizedBitmap.getWidth();
-                                finalHeightOut = resizedBitmap.getHeight();
-                            } else {
-                                // No explicit size/ratio: crop to match current preview content
-                                Bitmap originalBitmap = BitmapFactory.decodeByteArray(originalCaptureBytes, 0, originalCaptureBytes.length);
-                                originalBitmap = applyExifOrientation(originalBitmap, exifInterface);
-                                Bitmap previewCropped = cropBitmapToMatchPreview(originalBitmap);
-                                if (embedTimestamp || embedLocation) {
-                                    previewCropped = drawTimestampAndLocationOntoBitmap(
-                                        previewCropped,
-                                        exifInterface,
+                            trace.lap("read");
+                            if (
+                                !tryExecute(processExecutor, () ->
+                                    processCapturedJpeg(
+                                        sequence,
+                                        requestId,
+                                        trace,
+                                        jpeg,
+                                        rotation,
+                                        format,
+                                        quality,
+                                        saveToGallery,
+                                        width,
+                                        height,
                                         embedTimestamp,
-                                        embedLocation
-                                    );
-                                }
-                                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                                previewCropped.compress(Bitmap.CompressFormat.JPEG, quality, stream);
-                                bytes = stream.toByteArray();
-                                transformedPixels = true;
-                                // Update EXIF JSON to reflect cropped dimensions; no in-place EXIF write to bytes
-                                try {
-                                    exifData.put("PixelXDimension", previewCropped.getWidth());
-                                    exifData.put("PixelYDimension", previewCropped.getHeight());
-                                    exifData.put("ImageWidth", previewCropped.getWidth());
-                                    exifData.put("ImageLength", previewCropped.getHeight());
-                                    exifData.put("Orientation", Integer.toString(ExifInterface.ORIENTATION_NORMAL));
-                                } catch (Exception ignore) {}
-                                finalWidthOut = previewCropped.getWidth();
-                                finalHeightOut = previewCropped.getHeight();
+                                        embedLocation,
+                                        exifTags
+                                    )
+                                )
+                            ) {
+                                failCapture(sequence, requestId, "Camera stopped");
                             }
-
-                            // After any transform, inject EXIF back into the in-memory JPEG bytes (no temp file)
-                            if (transformedPixels) {
-                                Integer fW = (finalWidthOut > 0) ? finalWidthOut : null;
-                                Integer fH = (finalHeightOut > 0) ? finalHeightOut : null;
-                                bytes = injectExifInMemory(bytes, originalCaptureBytes, fW, fH);
+                            if (thumbnailSize != null) {
+                                tryExecute(thumbnailExecutor, () ->
+                                    deliverThumbnail(requestId, jpeg, rotation, width, height, thumbnailSize)
+                                );
                             }
+                        }
 
-                            // Save to gallery asynchronously if requested, copy EXIF to file
-                            if (saveToGallery) {
-                                final byte[] finalBytes = bytes;
-                                final ExifInterface exifForFile = exifInterface;
-                                final Integer fW = (finalWidthOut > 0) ? finalWidthOut : null;
-                                final Integer fH = (finalHeightOut > 0) ? finalHeightOut : null;
-                                new Thread(() -> saveImageToGallery(finalBytes, exifForFile, fW, fH)).start();
-                            }
+                        @Override
+                        public void onError(@NonNull ImageCaptureException exception) {
+                            onCaptureFailed(sequence, requestId, exception);
+                        }
+                    }
+                );
+            } else {
+                // CameraX only writes the GPS metadata when saving through OutputFileOptions
+                final ByteArrayOutputStream imageStream = new ByteArrayOutputStream();
+                ImageCapture.Metadata metadata = new ImageCapture.Metadata();
+                metadata.setLocation(location);
+                ImageCapture.OutputFileOptions outputFileOptions = new ImageCapture.OutputFileOptions.Builder(imageStream)
+                    .setMetadata(metadata)
+                    .build();
 
-                            String resultValue;
-                            boolean returnFileUri = sessionConfig != null && sessionConfig.isStoreToFile();
-                            if (returnFileUri) {
-                                // Persist processed image to a file and return its URI to avoid heavy base64 bridging
-                                try {
-                                    String fileName =
-                                        "cpcp_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new java.util.Date()) + ".jpg";
-                                    File outDir = context.getCacheDir();
-                                    File outFile = new File(outDir, fileName);
-                                    FileOutputStream outFos = new FileOutputStream(outFile);
-                                    outFos.write(bytes);
-                                    outFos.close();
-
-                                    // No EXIF rewrite here; bytes already contain EXIF when needed
-
-                                    // Return a file path; apps can convert via Capacitor.convertFileSrc on JS side
-                                    resultValue = outFile.getAbsolutePath();
-                                } catch (IOException ioEx) {
-                                    Log.e(TAG, "capturePhoto: Failed to write image file", ioEx);
-                                    // Fallback to base64 if file write fails
-                                    resultValue = Base64.encodeToString(bytes, Base64.NO_WRAP);
-                                }
-                            } else {
-                                // Backward-compatible behavior
-                                resultValue = Base64.encodeToString(bytes, Base64.NO_WRAP);
-                            }
+                imageCapture.takePicture(
+                    outputFileOptions,
+                    captureExecutor,
+                    new ImageCapture.OnImageSavedCallback() {
+                        @Override
+                        public void onError(@NonNull ImageCaptureException exception) {
+                            onCaptureFailed(sequence, requestId, exception);
+                        }
 
-                            if (listener != null) {
-                                listener.onPictureTaken(resultValue, exifData);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "capturePhoto: Error processing image", e);
-                            if (listener != null) {
-                                listener.onPictureTakenError("Error processing image: " + e.getMessage());
+                        @Override
+                        public void onImageSaved(@NonNull ImageCapture.OutputFileResults output) {
+                            trace.lap("shutter");
+                            byte[] jpeg = imageStream.toByteArray();
+                            trace.lap("read");
+                            if (
+                                !tryExecute(processExecutor, () ->
+                                    processCapturedJpeg(
+                                        sequence,
+                                        requestId,
+                                        trace,
+                                        jpeg,
+                                        ROTATION_FROM_EXIF,
+                                        format,
+                                        quality,
+                                        saveToGallery,
+                                        width,
+                                        height,
+                                        embedTimestamp,
+                                        embedLocation,
+                                        exifTags
+                                    )
+                                )
+                            ) {
+                                failCapture(sequence, requestId, "Camera stopped");
                             }
-                        } finally {
-                            // End of capture lifecycle
-                            synchronized (captureLock) {
-                                isCapturingPhoto = false;
-                                if (stopRequested) {
-                                    performImmediateStop();
-                                }
+                            if (thumbnailSize != null) {
+                                tryExecute(thumbnailExecutor, () ->
+                                    deliverThumbnail(requestId, jpeg, ROTATION_FROM_EXIF, width, height, thumbnailSize)
+                                );
                             }
-                            endOperation("capturePhoto");
                         }
                     }
-                }
-            );
-
-            dispatched = true;
+                );
+            }
         } catch (Exception e) {
             Log.e(TAG, "capturePhoto: Failed to start photo capture", e);
+            failCapture(sequence, requestId, "Photo capture failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Thumbnail lane: reports a small upright JPEG of the photo, at most maxSize on its longer edge,
+     * while the full-resolution result is still processed. Decoding at a reduced scale keeps this
+     * to a fraction of the full pipeline. Without an explicit size the thumbnail is cropped to the
+     * preview like the final photo. On failure nothing is reported and the full result answers.
+     */
+    private void deliverThumbnail(String requestId, byte[] jpeg, int rotationDegrees, Integer width, Integer height, int maxSize) {
+        try {
+            int rotation = rotationDegrees != ROTATION_FROM_EXIF
+                ? rotationDegrees
+                : exifToDegrees(
+                      new ExifInterface(new ByteArrayInputStream(jpeg)).getAttributeInt(
+                          ExifInterface.TAG_ORIENTATION,
+                          ExifInterface.ORIENTATION_UNDEFINED
+                      )
+                  );
+            Bitmap thumbnail = CaptureDecoder.decodeFitted(jpeg, rotation, maxSize, maxSize);
+            if (width == null && height == null) {
+                int[] encodedSize = CaptureDecoder.readSize(jpeg);
+                boolean swap = rotation == 90 || rotation == 270;
+                int uprightW = swap ? encodedSize[1] : encodedSize[0];
+                int uprightH = swap ? encodedSize[0] : encodedSize[1];
+                Rect crop = previewCropRect(uprightW, uprightH);
+                float scale = (float) thumbnail.getWidth() / uprightW;
+                Rect scaled = new Rect(
+                    Math.round(crop.left * scale),
+                    Math.round(crop.top * scale),
+                    Math.min(thumbnail.getWidth(), Math.round(crop.right * scale)),
+                    Math.min(thumbnail.getHeight(), Math.round(crop.bottom * scale))
+                );
+                if (scaled.width() > 0 && scaled.height() > 0) {
+                    Bitmap cropped = Bitmap.createBitmap(thumbnail, scaled.left, scaled.top, scaled.width(), scaled.height());
+                    if (cropped != thumbnail) thumbnail.recycle();
+                    thumbnail = cropped;
+                }
+            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, 80, stream);
+            int thumbnailWidth = thumbnail.getWidth();
+            int thumbnailHeight = thumbnail.getHeight();
+            thumbnail.recycle();
+            if (listener != null) {
+                listener.onPictureThumbnail(
+                    requestId,
+                    Base64.encodeToString(stream.toByteArray(), Base64.NO_WRAP),
+                    thumbnailWidth,
+                    thumbnailHeight
+                );
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "capturePhoto: thumbnail failed, answering with the full result", e);
+        }
+    }
+
+    public void setMaxCapturesInFlight(int max) {
+        maxCapturesInFlight = Math.max(1, max);
+    }
+
+    /** Peak bytes a re-encoded capture may hold; 0 or less restores the default. */
+    public void setCaptureMemoryBudget(long bytes) {
+        captureMemoryBudget = bytes > 0 ? bytes : StripEncoder.defaultBudget();
+    }
+
+    public void setCaptureStore(CaptureStore store) {
+        captureStore = store;
+    }
+
+    public void setGallerySaver(GallerySaver saver) {
+        gallerySaver = saver;
+    }
+
+    public void setCaptureTimings(CaptureTimings timings) {
+        captureTimings = timings;
+    }
+
+    /** Watermark drawn on every photo taken with capturePhoto; null removes it. */
+    public void setWatermark(OverlayRenderer.Watermark watermark) {
+        overlayRenderer.setWatermark(watermark);
+    }
+
+    private void onCaptureFailed(long sequence, String requestId, ImageCaptureException exception) {
+        Log.e(TAG, "capturePhoto: Photo capture failed", exception);
+        failCapture(sequence, requestId, "Photo capture failed: " + exception.getMessage());
+    }
+
+    private void failCapture(long sequence, String requestId, String message) {
+        deliverCaptureInOrder(sequence, () -> {
             if (listener != null) {
-                listener.onPictureTakenError("Photo capture failed: " + e.getMessage());
+                listener.onPictureTakenError(requestId, message);
             }
-        } finally {
-            if (!dispatched) {
-                synchronized (captureLock) {
-                    isCapturingPhoto = false;
-                    if (stopRequested) {
-                        performImmediateStop();
-                    }
+        });
+    }
+
+    // Runs a capture's delivery once every earlier capture has been delivered, then ends that capture
+    private void deliverCaptureInOrder(long sequence, Runnable delivery) {
+        synchronized (captureDeliveryLock) {
+            readyCaptureResults.put(sequence, delivery);
+            Runnable next;
+            while ((next = readyCaptureResults.remove(nextDeliverySequence)) != null) {
+                nextDeliverySequence++;
+                try {
+                    next.run();
+                } catch (Exception e) {
+                    Log.w(TAG, "capturePhoto: listener failed", e);
+                } finally {
+                    finishCapture();
                 }
-                endOperation("capturePhoto");
             }
         }
     }
 
-    private Bitmap drawTimestampAndLocationOntoBitmap(Bitmap src, ExifInterface exif, boolean embedTimestamp, boolean embedLocation) {
-        if (src == null) return null;
+    // Runs in shutter order; the wait for earlier photos is the "ordering" stage
+    private void deliverCapture(String requestId, CaptureTimings.Trace trace, String value, JSONObject exif) {
+        trace.lap("ordering");
+        CaptureTimings timings = captureTimings;
+        if (timings != null) {
+            timings.record(trace);
+        }
+        if (listener != null) {
+            listener.onPictureTaken(requestId, value, exif, trace.toMillis(), trace.getPeakBytes());
+        }
+    }
+
+    // Single copy of the encoded JPEG out of the capture buffer
+    private static byte[] readJpegBuffer(ImageProxy image) {
+        if (image.getFormat() != ImageFormat.JPEG) {
+            throw new IllegalStateException("Unexpected capture format " + image.getFormat());
+        }
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        buffer.rewind();
+        byte[] jpeg = new byte[buffer.remaining()];
+        buffer.get(jpeg);
+        return jpeg;
+    }
+
+    // Process lane. Transforms, tags and delivers a captured JPEG, re-encoded in format unless it
+    // stays JPEG and can be cropped losslessly; rotationDegrees may be ROTATION_FROM_EXIF
+    private void processCapturedJpeg(
+        long sequence,
+        String requestId,
+        CaptureTimings.Trace trace,
+        byte[] originalCaptureBytes,
+        int rotationDegrees,
+        String format,
+        int quality,
+        boolean saveToGallery,
+        Integer width,
+        Integer height,
+        boolean embedTimestamp,
+        boolean embedLocation,
+        String[][] exifTags
+    ) {
+        trace.lap("processQueue");
+        try {
+            byte[] bytes = originalCaptureBytes; // will be replaced if we transform
+            int finalWidthOut = -1;
+            int finalHeightOut = -1;
+            boolean transformedPixels = false;
+
+            // EXIF is only parsed when something reads it: the orientation, the overlay or the result
+            boolean drawsOverlay = embedTimestamp || embedLocation || overlayRenderer.hasWatermark();
+            ExifInterface exifInterface = null;
+            if (rotationDegrees == ROTATION_FROM_EXIF || drawsOverlay || exifTags != null) {
+                exifInterface = new ExifInterface(new ByteArrayInputStream(originalCaptureBytes));
+                trace.lap("exifParse");
+            }
+            // Build EXIF JSON from captured bytes (location applied by metadata if provided)
+            JSONObject exifData = new JSONObject();
+            if (exifTags != null) {
+                exifData = getExifData(exifInterface, exifTags);
+                trace.lap(exifTags == EXIF_TAGS ? "exifAll" : "exifTags");
+            }
+
+            int rotation = rotationDegrees != ROTATION_FROM_EXIF
+                ? rotationDegrees
+                : exifToDegrees(exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED));
+            int[] encodedSize = CaptureDecoder.readSize(originalCaptureBytes);
+            boolean swap = rotation == 90 || rotation == 270;
+            int uprightW = swap ? encodedSize[1] : encodedSize[0];
+            int uprightH = swap ? encodedSize[0] : encodedSize[1];
+            StripEncoder.Painter overlay = drawsOverlay
+                ? overlayRenderer.painterFor(exifInterface, embedTimestamp, embedLocation)
+                : null;
+            if (width != null || height != null) {
+                // Subsampled decode, rotation + final scale in one pass, strip by strip
+                int[] target = CaptureDecoder.fitWithin(uprightW, uprightH, width, height);
+                StripEncoder.Result encoded = StripEncoder.encode(
+                    originalCaptureBytes,
+                    rotation,
+                    new Rect(0, 0, uprightW, uprightH),
+                    target[0],
+                    target[1],
+                    format,
+                    quality,
+                    captureMemoryBudget,
+                    overlay
+                );
+                trace.lap("encode");
+                trace.setPeakBytes(encoded.peakBytes);
+                bytes = encoded.data;
+                finalWidthOut = encoded.width;
+                finalHeightOut = encoded.height;
+            } else {
+                // No explicit size/ratio: crop to match current preview content
+                Rect crop = previewCropRect(uprightW, uprightH);
+                JpegLosslessTransform.Result lossless = null;
+                boolean keepsJpeg = overlay == null && ImageEncoder.JPEG.equals(format);
+                if (keepsJpeg && rotation == 0 && crop.equals(new Rect(0, 0, uprightW, uprightH))) {
+                    // Already upright and matching the preview: the encoded bytes are the result
+                    lossless = new JpegLosslessTransform.Result(originalCaptureBytes, uprightW, uprightH);
+                } else if (keepsJpeg) {
+                    // Nothing to draw: crop and rotate in the DCT domain, no decode/re-encode
+                    lossless = JpegLosslessTransform.transform(
+                        originalCaptureBytes,
+                        rotation,
+                        crop.left,
+                        crop.top,
+                        crop.right,
+                        crop.bottom
+                    );
+                }
+                if (lossless != null) {
+                    trace.lap("losslessTransform");
+                    bytes = lossless.jpeg;
+                    finalWidthOut = lossless.width;
+                    finalHeightOut = lossless.height;
+                } else {
+                    // Decode only the cropped region, one strip at a time within the memory budget
+                    StripEncoder.Result encoded = StripEncoder.encode(
+                        originalCaptureBytes,
+                        rotation,
+                        crop,
+                        crop.width(),
+                        crop.height(),
+                        format,
+                        quality,
+                        captureMemoryBudget,
+                        overlay
+                    );
+                    trace.lap("encode");
+                    trace.setPeakBytes(encoded.peakBytes);
+                    bytes = encoded.data;
+                    finalWidthOut = encoded.width;
+                    finalHeightOut = encoded.height;
+                }
+            }
+            transformedPixels = true;
+            // Update EXIF JSON to reflect the output dimensions; no in-place EXIF write to bytes
+            if (exifTags != null) {
+                try {
+                    patchExifData(exifData, exifTags, finalWidthOut, finalHeightOut);
+                } catch (Exception ignore) {}
+            }
+
+            // After any transform, inject EXIF back into the in-memory JPEG bytes (no temp file);
+            // other formats already carry it
+            if (transformedPixels) {
+                Integer fW = (finalWidthOut > 0) ? finalWidthOut : null;
+                Integer fH = (finalHeightOut > 0) ? finalHeightOut : null;
+                bytes = injectExifInMemory(bytes, originalCaptureBytes, fW, fH);
+                trace.lap("exifInject");
+            }
 
-        // Build strings (null-safe)
-        final String when = embedTimestamp ? buildTimestampStringFromExif(exif) : null;
-        final String where = (embedLocation ? buildLocationStringFromExif(exif) : null);
+            // Queue for the gallery; bytes already carry their EXIF. Blocks this lane while the
+            // saver's queue is full.
+            if (saveToGallery) {
+                GallerySaver saver = gallerySaver;
+                if (saver != null) {
+                    saver.save(requestId, bytes);
+                    trace.lap("galleryQueue");
+                } else {
+                    Log.w(TAG, "capturePhoto: saveToGallery requested but no gallery saver is set");
+                }
+            }
 
-        // Nothing to draw?
-        if ((when == null || when.isEmpty()) && (where == null || where.isEmpty())) {
-            Log.d(TAG, "capturePhoto:... embedTimestamp: " + embedTimestamp + ", embedLocation: " + embedLocation);
-            Log.d(TAG, "capturePhoto: nothing to draw");
-            return src;
+            boolean returnFileUri = sessionConfig != null && sessionConfig.isStoreToFile();
+            if (returnFileUri) {
+                // Persist processed image to a file on the I/O lane and return its path to avoid
+                // heavy base64 bridging; the process lane is free for the next photo meanwhile
+                final byte[] fileBytes = bytes;
+                Runnable write = () -> {
+                    trace.lap("ioQueue");
+                    String resultValue = writeCaptureFile(fileBytes);
+                    trace.lap("write");
+                    deliverCaptureInOrder(sequence, () -> deliverCapture(requestId, trace, resultValue, exifData));
+                };
+                if (!tryExecute(ioExecutor, write)) {
+                    failCapture(sequence, requestId, "Camera stopped");
+                }
+            } else {
+                // Backward-compatible behavior
+                String resultValue = Base64.encodeToString(bytes, Base64.NO_WRAP);
+                trace.lap("base64");
+                deliverCaptureInOrder(sequence, () -> deliverCapture(requestId, trace, resultValue, exifData));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "capturePhoto: Error processing image", e);
+            failCapture(sequence, requestId, "Error processing image: " + e.getMessage());
         }
+    }
 
-        final Bitmap bmp = src.isMutable() ? src : src.copy(Bitmap.Config.ARGB_8888, true);
-        final Canvas canvas = new Canvas(bmp);
+    // End of capture lifecycle. A deferred stop runs from endOperation, once no other operation
+    // (burst, samples) still needs the lanes either
+    private void finishCapture() {
+        synchronized (captureLock) {
+            capturesInFlight--;
+            isCapturingPhoto = capturesInFlight > 0;
+        }
+        endOperation("capturePhoto");
+    }
 
-        // ---- Visual constants (match timestamp style) ----
-        final float fontPx = Math.max(10f, bmp.getWidth() * 0.035f); // ~3.5% of width
-        final float paddingH = 16f; // horizontal inner padding
-        final float paddingV = 10f; // vertical inner padding
-        final float margin = 12f; // margin from image edges
-        final float gap = 8f; // vertical gap between stacked pills
-        final float corner = 10f; // corner radius
-        final int bgColor = Color.argb(56, 31, 31, 31); // ~iOS gray at ~22% alpha
+    // I/O lane only. Returns the written file's path, or base64 of the bytes if the write fails.
+    private String writeCaptureFile(byte[] bytes) {
+        try {
+            // No EXIF rewrite here; bytes already contain EXIF when needed
 
-        // Text paint
-        final Paint text = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG | Paint.LINEAR_TEXT_FLAG);
-        text.setColor(Color.WHITE);
-        text.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
-        text.setTextSize(fontPx);
-        text.setTextAlign(Paint.Align.LEFT);
-        text.setDither(true);
-        text.setFilterBitmap(true);
-        text.setHinting(Paint.HINTING_ON);
-        final Paint.FontMetrics fm = text.getFontMetrics();
-        final float lineHeight = fm.descent - fm.ascent;
+            // Return a file path; apps can convert via Capacitor.convertFileSrc on JS side
+            return writeCacheFile(bytes, "cpcp_", false).getAbsolutePath();
+        } catch (IOException ioEx) {
+            Log.e(TAG, "capturePhoto: Failed to write image file", ioEx);
+            // Fallback to base64 if file write fails
+            return Base64.encodeToString(bytes, Base64.NO_WRAP);
+        }
+    }
 
-        // Background paint
-        final Paint bg = new Paint(Paint.ANTI_ALIAS_FLAG);
-        bg.setColor(bgColor);
-        bg.setStyle(Paint.Style.FILL);
-        bg.setShadowLayer(6f, 0f, 2f, Color.argb(64, 0, 0, 0));
+    // I/O lane only. Goes through the capture store when one is set, so the file counts against
+    // its budget (pinned files are kept until unpinned); otherwise the file is written straight
+    // to the cache directory.
+    private File writeCacheFile(byte[] bytes, String prefix, boolean pin) throws IOException {
+        String extension = GallerySaver.extensionOf(GallerySaver.mimeTypeOf(bytes));
+        CaptureStore store = captureStore;
+        if (store != null) {
+            return store.write(prefix, extension, bytes, pin);
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date());
+        String fileName = prefix + stamp + "_" + UUID.randomUUID() + extension;
+        File outFile = new File(context.getCacheDir(), fileName);
+        try (FileOutputStream outFos = new FileOutputStream(outFile)) {
+            outFos.write(bytes);
+        }
+        return outFile;
+    }
 
-        float nextTop = margin;
+    /**
+     * Takes count full-resolution photos, at most one every intervalMs, writing each to the cache
+     * directory as soon as it is processed. Progress is reported per frame in shutter order; the
+     * listener's onBurstComplete carries the file paths. quality null keeps the camera's JPEG
+     * (rotated losslessly), otherwise frames are re-encoded at that quality.
+     */
+    public void captureBurst(String requestId, int count, long intervalMs, Integer quality) {
+        if (imageCapture == null) {
+            if (listener != null) listener.onBurstError(requestId, "Camera not ready");
+            return;
+        }
+        if (IsOperationRunning("captureBurst")) {
+            if (listener != null) listener.onBurstError(requestId, "Camera is stopping");
+            return;
+        }
+        BurstState state = null;
+        synchronized (burstLock) {
+            if (activeBurst == null) {
+                state = new BurstState(requestId, count, intervalMs, quality);
+                activeBurst = state;
+            }
+        }
+        if (state == null) {
+            endOperation("captureBurst");
+            if (listener != null) listener.onBurstError(requestId, "A burst is already running");
+            return;
+        }
+        Log.d(TAG, "captureBurst: " + count + " frames, interval " + intervalMs + "ms, quality " + quality);
+        shootBurstFrame(state);
+    }
 
-        // Helper to draw a pill aligned to the top-right, returns the bottom Y used
-        java.util.function.BiFunction<String, Float, Float> drawPill = (label, top) -> {
-            if (label == null || label.isEmpty()) return top;
-            float textW = text.measureText(label);
-            float bgW = textW + paddingH * 2f;
-            float bgH = lineHeight + paddingV * 2f;
+    // Takes the next frame unless the burst is complete, a shot is already pending, the interval has
+    // not elapsed or the processing queue is full (resumed when a queued frame is written)
+    private void shootBurstFrame(BurstState state) {
+        final int index;
+        boolean finish = false;
+        synchronized (burstLock) {
+            if (state.finished || state.shotPending || state.timerPending) return;
+            if (stopRequested && !state.stopped) {
+                state.stopped = true;
+            }
+            if (state.stopped || state.shotsTaken >= state.count) {
+                finish = state.isDone() && markBurstFinished(state);
+                index = -1;
+            } else if (state.queued >= maxCapturesInFlight) {
+                return;
+            } else {
+                long waitMs = state.lastShotNanos == 0
+                    ? 0
+                    : state.intervalMs - (System.nanoTime() - state.lastShotNanos) / 1_000_000L;
+                if (waitMs > 0) {
+                    state.timerPending = true;
+                    burstHandler.postDelayed(
+                        () -> {
+                            synchronized (burstLock) {
+                                state.timerPending = false;
+                            }
+                            shootBurstFrame(state);
+                        },
+                        waitMs
+                    );
+                    return;
+                }
+                index = state.shotsTaken++;
+                state.queued++;
+                state.shotPending = true;
+                state.lastShotNanos = System.nanoTime();
+            }
+        }
+        if (finish) {
+            finishBurst(state);
+            return;
+        }
+        if (index < 0) return;
 
-            float left = Math.max(0, bmp.getWidth() - bgW - margin);
-            float right = left + bgW;
-            float bottom = top + bgH;
+        try {
+            imageCapture.takePicture(
+                captureExecutor,
+                new ImageCapture.OnImageCapturedCallback() {
+                    @Override
+                    public void onCaptureSuccess(@NonNull ImageProxy image) {
+                        byte[] jpeg = null;
+                        int rotation = 0;
+                        String error = null;
+                        try {
+                            jpeg = readJpegBuffer(image);
+                            rotation = image.getImageInfo().getRotationDegrees();
+                        } catch (Exception e) {
+                            error = "Unable to read frame: " + e.getMessage();
+                        } finally {
+                            image.close();
+                        }
+                        onBurstShotDone(state);
+                        if (jpeg != null) {
+                            final byte[] frame = jpeg;
+                            final int frameRotation = rotation;
+                            if (!tryExecute(processExecutor, () -> processBurstFrame(state, index, frame, frameRotation))) {
+                                completeBurstFrame(state, index, null, "Camera stopped");
+                            }
+                        } else {
+                            failBurstFrame(state, index, error);
+                        }
+                    }
 
-            // Background
-            canvas.drawRoundRect(left, top, right, bottom, corner, corner, bg);
+                    @Override
+                    public void onError(@NonNull ImageCaptureException exception) {
+                        Log.e(TAG, "captureBurst: frame " + index + " failed", exception);
+                        onBurstShotDone(state);
+                        failBurstFrame(state, index, "Capture failed: " + exception.getMessage());
+                    }
+                }
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "captureBurst: unable to take frame " + index, e);
+            synchronized (burstLock) {
+                state.stopped = true; // the use case is gone; do not retry
+            }
+            onBurstShotDone(state);
+            failBurstFrame(state, index, "Capture failed: " + e.getMessage());
+        }
+    }
 
-            // Text baseline
-            float textX = left + paddingH;
-            float textY = top + paddingV - fm.ascent; // convert top-left to baseline
-            canvas.drawText(label, textX, textY, text);
+    private void onBurstShotDone(BurstState state) {
+        synchronized (burstLock) {
+            state.shotPending = false;
+        }
+        shootBurstFrame(state);
+    }
 
-            return bottom;
+    // Process lane
+    private void processBurstFrame(BurstState state, int index, byte[] jpeg, int rotation) {
+        byte[] encoded;
+        try {
+            encoded = encodeBurstFrame(jpeg, rotation, state.quality);
+        } catch (Exception e) {
+            Log.e(TAG, "captureBurst: failed to process frame " + index, e);
+            failBurstFrameOnIo(state, index, "Error processing frame: " + e.getMessage());
+            return;
+        }
+        Runnable write = () -> {
+            String path = null;
+            String error = null;
+            try {
+                // Pinned so the burst's later frames cannot evict its earlier ones
+                path = writeCacheFile(encoded, "cpcp_burst_", true).getAbsolutePath();
+            } catch (IOException e) {
+                Log.e(TAG, "captureBurst: failed to write frame " + index, e);
+                error = "Failed to write frame: " + e.getMessage();
+            }
+            completeBurstFrame(state, index, path, error);
         };
-
-        // 1) Timestamp (if any)
-        if (when != null && !when.isEmpty()) {
-            nextTop = drawPill.apply(when, nextTop);
-            // add gap below
-            nextTop += gap;
+        if (!tryExecute(ioExecutor, write)) {
+            completeBurstFrame(state, index, null, "Camera stopped");
         }
+    }
 
-        // 2) Location (if any)
-        if (where != null && !where.isEmpty()) {
-            // If there was no timestamp drawn, we still start at top margin.
-            // If there was, we use the accumulated nextTop (= bottom + gap).
-            drawPill.apply(where, (when != null && !when.isEmpty()) ? nextTop : margin);
+    // Routes a failure through the process and I/O lanes so progress stays in shutter order
+    private void failBurstFrame(BurstState state, int index, String error) {
+        if (!tryExecute(processExecutor, () -> failBurstFrameOnIo(state, index, error))) {
+            completeBurstFrame(state, index, null, error);
         }
+    }
 
-        return bmp;
+    private void failBurstFrameOnIo(BurstState state, int index, String error) {
+        if (!tryExecute(ioExecutor, () -> completeBurstFrame(state, index, null, error))) {
+            completeBurstFrame(state, index, null, error);
+        }
     }
 
-    /** Build "yyyy-MM-dd HH:mm:ss" from EXIF, fallback to now. */
-    private String buildTimestampStringFromExif(ExifInterface exif) {
-        final String out = "yyyy-MM-dd HH:mm:ss";
+    // A lane that is already shut down rejects the hand-off; callers then fail the photo or burst
+    // frame themselves, so its delivery and operation still end instead of hanging
+    private static boolean tryExecute(ExecutorService lane, Runnable task) {
         try {
-            if (exif != null) {
-                String exifDate = exif.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL);
-                if (exifDate == null || exifDate.trim().isEmpty()) {
-                    exifDate = exif.getAttribute(ExifInterface.TAG_DATETIME);
-                }
-                if (exifDate != null && !exifDate.trim().isEmpty()) {
-                    java.text.SimpleDateFormat in = new java.text.SimpleDateFormat("yyyy:MM:dd HH:mm:ss", java.util.Locale.US);
-                    java.util.Date d = in.parse(exifDate);
-                    if (d != null) {
-                        return new java.text.SimpleDateFormat(out, java.util.Locale.getDefault()).format(d);
-                    }
+            lane.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Lane shut down, not handing off", e);
+            return false;
+        }
+    }
+
+    // Upright full-resolution JPEG with the capture's EXIF: lossless unless a quality is requested
+    private byte[] encodeBurstFrame(byte[] jpeg, int rotation, Integer quality) throws IOException {
+        int[] size = CaptureDecoder.readSize(jpeg);
+        boolean swap = rotation == 90 || rotation == 270;
+        int width = swap ? size[1] : size[0];
+        int height = swap ? size[0] : size[1];
+        byte[] encoded = null;
+        if (quality == null) {
+            if (rotation == 0) {
+                encoded = jpeg;
+            } else {
+                JpegLosslessTransform.Result rotated = JpegLosslessTransform.transform(jpeg, rotation, 0, 0, width, height);
+                if (rotated != null) {
+                    encoded = rotated.jpeg;
+                    width = rotated.width;
+                    height = rotated.height;
                 }
             }
-        } catch (Throwable ignored) {}
-        // Fallback to "now" if EXIF missing/invalid
-        return new java.text.SimpleDateFormat(out, java.util.Locale.getDefault()).format(new java.util.Date());
+        }
+        if (encoded == null) {
+            StripEncoder.Result strips = StripEncoder.encode(
+                jpeg,
+                rotation,
+                new Rect(0, 0, width, height),
+                width,
+                height,
+                ImageEncoder.JPEG,
+                quality != null ? quality : 95,
+                captureMemoryBudget,
+                null
+            );
+            encoded = strips.data;
+        }
+        return injectExifInMemory(encoded, jpeg, width, height);
     }
 
-    /** Build "lat, lon" from EXIF GPS. Returns null if absent (so caller can skip). */
-    private String buildLocationStringFromExif(ExifInterface exif) {
-        if (exif == null) return null;
-        try {
-            float[] latLong = new float[2];
-            if (exif.getLatLong(latLong)) {
-                // Keep a compact but readable precision (5 decimals ≈ ~1 m–10 m)
-                String lat = String.format(java.util.Locale.US, "%.5f", latLong[0]);
-                String lon = String.format(java.util.Locale.US, "%.5f", latLong[1]);
-                return lat + ", " + lon;
+    // I/O lane
+    private void completeBurstFrame(BurstState state, int index, String path, String error) {
+        boolean finish;
+        synchronized (burstLock) {
+            state.queued--;
+            state.completed++;
+            if (path != null) {
+                state.paths.add(path);
+            } else {
+                state.failed++;
             }
-        } catch (Throwable ignored) {}
-        return null; // No EXIF GPS → skip
+            finish = state.isDone() && markBurstFinished(state);
+        }
+        if (listener != null) {
+            listener.onBurstProgress(state.requestId, index, state.count, path, error);
+        }
+        if (finish) {
+            finishBurst(state);
+        } else {
+            // A slot in the queue is free again
+            shootBurstFrame(state);
+        }
+    }
+
+    // Caller holds burstLock; true for the one caller that gets to finish the burst
+    private boolean markBurstFinished(BurstState state) {
+        if (state.finished) return false;
+        state.finished = true;
+        if (activeBurst == state) activeBurst = null;
+        return true;
+    }
+
+    private void finishBurst(BurstState state) {
+        List<String> paths;
+        int failed;
+        synchronized (burstLock) {
+            paths = new ArrayList<>(state.paths);
+            failed = state.failed;
+        }
+        CaptureStore store = captureStore;
+        if (store != null) {
+            // From here the frames age out like any other capture
+            store.unpin(paths);
+        }
+        Log.d(TAG, "captureBurst: done, " + paths.size() + " written, " + failed + " failed");
+        if (listener != null) {
+            listener.onBurstComplete(state.requestId, paths, failed);
+        }
+        endOperation("captureBurst");
     }
 
     private int exifToDegrees(int exifOrientation) {
@@ -1333,63 +2077,11 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         }
     }
 
-    private Bitmap applyExifOrientation(Bitmap bitmap, ExifInterface exif) {
-        try {
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
-            int rotation = exifToDegrees(orientation);
-            if (rotation == 0) return bitmap;
-            Matrix m = new Matrix();
-            m.postRotate(rotation);
-            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), m, true);
-            if (rotated != bitmap) {
-                try {
-                    bitmap.recycle();
-                } catch (Exception ignore) {}
-            }
-            return rotated;
-        } catch (Exception e) {
-            return bitmap;
-        }
-    }
-
-    private Bitmap resizeBitmapToMaxDimensions(Bitmap bitmap, Integer maxWidth, Integer maxHeight) {
-        int originalWidth = bitmap.getWidth();
-        int originalHeight = bitmap.getHeight();
-        float originalAspectRatio = (float) originalWidth / originalHeight;
-
-        int targetWidth;
-        int targetHeight = originalHeight;
-
-        if (maxWidth != null && maxHeight != null) {
-            // Both dimensions specified - fit within both maximums
-            float maxAspectRatio = (float) maxWidth / maxHeight;
-            if (originalAspectRatio > maxAspectRatio) {
-                // Original is wider - fit by width
-                targetWidth = maxWidth;
-                targetHeight = (int) (maxWidth / originalAspectRatio);
-            } else {
-                // Original is taller - fit by height
-                targetWidth = (int) (maxHeight * originalAspectRatio);
-                targetHeight = maxHeight;
-            }
-        } else if (maxWidth != null) {
-            // Only width specified - maintain aspect ratio
-            targetWidth = maxWidth;
-            targetHeight = (int) (maxWidth / originalAspectRatio);
-        } else {
-            // Only height specified - maintain aspect ratio
-            targetWidth = (int) (maxHeight * originalAspectRatio);
-            targetHeight = maxHeight;
-        }
-
-        return Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
-    }
-
-    private JSONObject getExifData(ExifInterface exifInterface) {
+    private JSONObject getExifData(ExifInterface exifInterface, String[][] tags) {
         JSONObject exifData = new JSONObject();
         try {
-            // Add all available exif tags to a JSON object
-            for (String[] tag : EXIF_TAGS) {
+            // Add the requested exif tags that are present to a JSON object
+            for (String[] tag : tags) {
                 String value = exifInterface.getAttribute(tag[0]);
                 if (value != null) {
                     exifData.put(tag[1], value);
@@ -1401,8 +2093,41 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         return exifData;
     }
 
-    // Inject EXIF into a JPEG byte[] fully in-memory using Apache Commons Imaging (no temp files)
-    // Copies EXIF from sourceJpeg (original capture) and updates orientation/dimensions if provided.
+    // Reflects the upright output image in the reported tags; tags that were not requested stay out
+    private static void patchExifData(JSONObject exifData, String[][] tags, int width, int height) throws JSONException {
+        for (String[] tag : tags) {
+            switch (tag[1]) {
+                case "PixelXDimension":
+                case "ImageWidth":
+                    exifData.put(tag[1], width);
+                    break;
+                case "PixelYDimension":
+                case "ImageLength":
+                    exifData.put(tag[1], height);
+                    break;
+                case "Orientation":
+                    exifData.put(tag[1], Integer.toString(ExifInterface.ORIENTATION_NORMAL));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The rows of the EXIF tag table named in names (the keys of the capture's exif result), in
+     * table order; null when none is known, so that nothing is read.
+     */
+    static String[][] exifTagsFor(List<String> names) {
+        List<String[]> selected = new ArrayList<>();
+        for (String[] tag : EXIF_TAGS) {
+            if (names.contains(tag[1])) selected.add(tag);
+        }
+        return selected.isEmpty() ? null : selected.toArray(new String[0][]);
+    }
+
+    // Inject EXIF into a JPEG byte[] fully in-memory (no temp files): splices the APP1 segment of
+    // sourceJpeg (original capture) into targetJpeg, normalizing orientation and updating dimensions.
     private byte[] injectExifInMemory(byte[] targetJpeg, byte[] sourceJpegWithExif, Integer finalWidth, Integer finalHeight) {
         try {
             // Quick signature check for JPEG (FF D8 FF)
@@ -1415,102 +2140,15 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
             ) {
                 return targetJpeg; // Not a JPEG; nothing to do
             }
-
-            // Use Commons Imaging to read EXIF from the original capture bytes
-            org.apache.commons.imaging.formats.jpeg.JpegImageMetadata jpegMetadata =
-                (org.apache.commons.imaging.formats.jpeg.JpegImageMetadata) org.apache.commons.imaging.Imaging.getMetadata(
-                    sourceJpegWithExif
-                );
-            org.apache.commons.imaging.formats.tiff.TiffImageMetadata exif = jpegMetadata != null ? jpegMetadata.getExif() : null;
-
-            org.apache.commons.imaging.formats.tiff.write.TiffOutputSet outputSet = exif != null
-                ? exif.getOutputSet()
-                : new org.apache.commons.imaging.formats.tiff.write.TiffOutputSet();
-
-            // Update orientation if requested (normalize to 1)
-            org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory rootDir = outputSet.getOrCreateRootDirectory();
-            rootDir.removeField(org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants.TIFF_TAG_ORIENTATION);
-            rootDir.add(org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants.TIFF_TAG_ORIENTATION, (short) 1);
-
-            if (finalWidth != null || finalHeight != null) {
-                try {
-                    updateResizedDimensions(outputSet, finalWidth, finalHeight);
-                } catch (Exception dimensionUpdateError) {
-                    Log.w(TAG, "injectExifInMemory: Failed to update resized dimensions", dimensionUpdateError);
-                }
-            }
-
-            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
-            new org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter().updateExifMetadataLossless(
-                new java.io.ByteArrayInputStream(targetJpeg),
-                out,
-                outputSet
-            );
-            return out.toByteArray();
+            return ExifSplicer.splice(targetJpeg, sourceJpegWithExif, finalWidth, finalHeight);
         } catch (Throwable t) {
             Log.w(TAG, "injectExifInMemory: Failed to write EXIF in memory", t);
             return targetJpeg; // Fallback: return original bytes
         }
     }
 
-    private void updateResizedDimensions(
-        org.apache.commons.imaging.formats.tiff.write.TiffOutputSet outputSet,
-        Integer finalWidth,
-        Integer finalHeight
-    ) throws org.apache.commons.imaging.ImagingException {
-        org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory rootDir = outputSet.getOrCreateRootDirectory();
-        if (finalWidth != null) {
-            replaceShortOrLongTag(
-                rootDir,
-                org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants.TIFF_TAG_IMAGE_WIDTH,
-                finalWidth
-            );
-        }
-        if (finalHeight != null) {
-            replaceShortOrLongTag(
-                rootDir,
-                org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants.TIFF_TAG_IMAGE_LENGTH,
-                finalHeight
-            );
-        }
-
-        org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory exifDir = outputSet.getOrCreateExifDirectory();
-        if (finalWidth != null) {
-            replaceShortTag(
-                exifDir,
-                org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants.EXIF_TAG_EXIF_IMAGE_WIDTH,
-                finalWidth
-            );
-        }
-        if (finalHeight != null) {
-            replaceShortTag(
-                exifDir,
-                org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants.EXIF_TAG_EXIF_IMAGE_LENGTH,
-                finalHeight
-            );
-        }
-    }
-
-    private void replaceShortOrLongTag(
-        org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory directory,
-        org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShortOrLong tagInfo,
-        int value
-    ) throws org.apache.commons.imaging.ImagingException {
-        directory.removeField(tagInfo);
-        directory.add(tagInfo, value);
-    }
-
-    private void replaceShortTag(
-        org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory directory,
-        org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort tagInfo,
-        int value
-    ) throws org.apache.commons.imaging.ImagingException {
-        int sanitizedValue = Math.max(0, Math.min(value, 0xFFFF));
-        directory.removeField(tagInfo);
-        directory.add(tagInfo, (short) sanitizedValue);
-    }
-
-    private static final String[][] EXIF_TAGS = new String[][] {
+    // Every tag a capture can report; passed as is for exif "all"
+    static final String[][] EXIF_TAGS = new String[][] {
         { ExifInterface.TAG_APERTURE_VALUE, "ApertureValue" },
         { ExifInterface.TAG_ARTIST, "Artist" },
         { ExifInterface.TAG_BITS_PER_SAMPLE, "BitsPerSample" },
@@ -1657,35 +2295,52 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     // Note: We avoid temporary files for EXIF writes. When we transform pixels (resize/crop),
     // we recompress JPEG in-memory and update EXIF info only in the returned JSON, not in the bytes.
 
-    public void captureSample(int quality) {
-        captureSampleInternal(quality, null); // null processor = return full image
+    /**
+     * Captures a full-frame sample. When the latest-frame cache holds a frame no older than
+     * maxAgeMs (any age when negative), it is returned right away instead of waiting for a frame.
+     * With sharpestOf > 1 or sharpestWindowMs > 0 the analyzer scores the next frames for
+     * sharpness instead and encodes only the best one; the cache is not used then.
+     */
+    public void captureSample(String requestId, String format, int quality, long maxAgeMs, int sharpestOf, long sharpestWindowMs) {
+        boolean selectSharpest = sharpestOf > 1 || sharpestWindowMs > 0;
+        // The cache holds JPEG
+        if (!selectSharpest && ImageEncoder.JPEG.equals(format) && serveSampleFromCache(requestId, maxAgeMs)) return;
+        captureSampleInternal(requestId, format, quality, null, sharpestOf, sharpestWindowMs); // null region = return full image
+    }
+
+    public void captureDownscaledSample(String requestId, String format, int quality, int targetMaxSize) {
+        captureSampleInternal(requestId, format, quality, downscaleRegion(targetMaxSize), 1, 0);
     }
 
-    public void captureDownscaledSample(int quality, int targetMaxSize) {
-        captureSampleInternal(quality, original -> {
-            int width = original.getWidth();
-            int height = original.getHeight();
+    // Scales so that the smallest side equals targetMaxSize; never upscales
+    private static FrameRegionSelector downscaleRegion(int targetMaxSize) {
+        return (width, height) -> {
             int smallestSide = Math.min(width, height);
 
-            if (smallestSide <= targetMaxSize) {
-                return original;
+            if (targetMaxSize <= 0 || smallestSide <= targetMaxSize) {
+                return null;
             }
 
             float scale = (float) targetMaxSize / (float) smallestSide;
             int newWidth = Math.round(width * scale);
             int newHeight = Math.round(height * scale);
 
-            return Bitmap.createScaledBitmap(original, newWidth, newHeight, true);
-        });
+            return new YuvFrameConverter.Region(new Rect(0, 0, width, height), newWidth, newHeight);
+        };
     }
 
-    public void captureCroppedSample(int quality, int x, int y, int reqWidth, int reqHeight) {
-        captureSampleInternal(quality, original -> {
-            if (previewContainer == null) return original;
+    public void captureCroppedSample(String requestId, String format, int quality, int x, int y, int reqWidth, int reqHeight) {
+        captureSampleInternal(requestId, format, quality, croppedRegion(x, y, reqWidth, reqHeight), 1, 0);
+    }
+
+    // Maps a rectangle in preview coordinates onto the analysis frame
+    private FrameRegionSelector croppedRegion(int x, int y, int reqWidth, int reqHeight) {
+        return (frameWidth, frameHeight) -> {
+            if (previewContainer == null) return null;
 
             // 1. Sensor Dimensions (High Res, e.g. 4000x3000)
-            float imgW = (float) original.getWidth();
-            float imgH = (float) original.getHeight();
+            float imgW = (float) frameWidth;
+            float imgH = (float) frameHeight;
 
             // 2. View Dimensions (Screen Res, e.g. 1080x1920)
             float viewW = (float) previewContainer.getWidth();
@@ -1751,36 +2406,472 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                 finalW = Math.min(finalW, (int)imgW - finalX);
                 finalH = Math.min(finalH, (int)imgH - finalY);
 
-                if (finalW <= 0 || finalH <= 0) return original;
+                if (finalW <= 0 || finalH <= 0) return null;
 
-                return Bitmap.createBitmap(original, finalX, finalY, finalW, finalH);
+                return new YuvFrameConverter.Region(new Rect(finalX, finalY, finalX + finalW, finalY + finalH), finalW, finalH);
             }
 
             // Fallback for simple scaling if logic ambiguous
-            return original;
-        });
+            return null;
+        };
     }
 
-    private void captureSampleInternal(int quality, BitmapProcessor processor) {
+    private void captureSampleInternal(
+        String requestId,
+        String format,
+        int quality,
+        FrameRegionSelector region,
+        int selectFrames,
+        long selectWindowMs
+    ) {
         if (imageAnalysis == null) {
-            if (listener != null) listener.onSampleTakenError("Camera not ready (Analysis missing)");
+            if (listener != null) listener.onSampleTakenError(requestId, "Camera not ready (Analysis missing)");
             return;
         }
 
-        // Prevent overlapping requests
+        // Prevent new requests while a stop is pending
         if (IsOperationRunning("captureSample")) {
-            // If you want to allow burst, you might remove this check,
-            // but "captureNextFrame" logic only handles one at a time.
-            Log.d(TAG, "captureSample skipped: busy");
+            Log.d(TAG, "captureSample skipped: stop is pending");
+            if (listener != null) listener.onSampleTakenError(requestId, "Camera is stopping");
+            return;
+        }
+
+        String rejection = null;
+        synchronized (analysisLock) {
+            if (pendingSampleRequests.containsKey(requestId)) {
+                rejection = "Duplicate sample request id";
+            } else if (pendingSampleRequests.size() >= MAX_PENDING_SAMPLE_REQUESTS) {
+                rejection = "Sample queue is full";
+            } else {
+                pendingSampleRequests.put(requestId, new SampleRequest(requestId, format, quality, region, selectFrames, selectWindowMs));
+            }
+        }
+        if (rejection != null) {
+            Log.d(TAG, "captureSample rejected: " + rejection);
+            if (listener != null) listener.onSampleTakenError(requestId, rejection);
+            endOperation("captureSample");
             return;
         }
+        Log.d(TAG, "Snapshot requested via ImageAnalysis (id=" + requestId + ")");
+    }
+
+    // Analyzer callback: offers the frame to every registered processor that is due and wants it,
+    // then closes it. Frames nobody wants are closed without any conversion.
+    private void analyzeFrame(ImageProxy imageProxy) {
+        try {
+            for (FrameProcessorSlot slot : frameProcessorSlots) {
+                if (!slot.isDue()) continue;
+                JSONObject result;
+                long startNanos = SystemClock.elapsedRealtimeNanos();
+                try {
+                    if (!slot.processor.wantsFrame()) {
+                        slot.idle();
+                        continue;
+                    }
+                    result = slot.processor.process(imageProxy);
+                } catch (Exception e) {
+                    Log.e(TAG, "Frame processor '" + slot.name + "' failed", e);
+                    result = null;
+                }
+                slot.recordRun(SystemClock.elapsedRealtimeNanos() - startNanos);
+                if (result != null && listener != null) {
+                    listener.onFrameProcessorResult(slot.name, result);
+                }
+            }
+        } finally {
+            imageProxy.close(); // CRITICAL: Must close to receive next frame
+        }
+    }
+
+    /**
+     * Registers a native frame processor on the analysis stream.
+     *
+     * @param frameSkip frames to skip between two runs (0 = every frame)
+     * @param budgetMs time budget per run; a run that exceeds it is counted and pushes the
+     *     processor's next run back by as many frames as the overrun covers (0 = unbounded)
+     */
+    public void registerFrameProcessor(String name, FrameProcessor processor, int frameSkip, long budgetMs) {
+        if (SNAPSHOT_PROCESSOR.equals(name)) {
+            throw new IllegalArgumentException("Frame processor name '" + name + "' is reserved");
+        }
+        synchronized (analysisLock) {
+            LinkedHashMap<String, FrameProcessorSlot> slots = new LinkedHashMap<>();
+            for (FrameProcessorSlot slot : frameProcessorSlots) slots.put(slot.name, slot);
+            slots.put(name, new FrameProcessorSlot(name, processor, frameSkip, budgetMs));
+            frameProcessorSlots = slots.values().toArray(new FrameProcessorSlot[0]);
+        }
+        Log.d(TAG, "registerFrameProcessor: " + name + " (frameSkip=" + frameSkip + ", budgetMs=" + budgetMs + ")");
+    }
+
+    public boolean unregisterFrameProcessor(String name) {
+        if (SNAPSHOT_PROCESSOR.equals(name)) return false;
+        synchronized (analysisLock) {
+            List<FrameProcessorSlot> slots = new ArrayList<>();
+            for (FrameProcessorSlot slot : frameProcessorSlots) {
+                if (!slot.name.equals(name)) slots.add(slot);
+            }
+            if (slots.size() == frameProcessorSlots.length) return false;
+            frameProcessorSlots = slots.toArray(new FrameProcessorSlot[0]);
+            return true;
+        }
+    }
+
+    /** Per-processor counters, in registration order. */
+    public List<JSONObject> getFrameProcessorStats() {
+        List<JSONObject> stats = new ArrayList<>();
+        for (FrameProcessorSlot slot : frameProcessorSlots) {
+            try {
+                stats.add(slot.stats());
+            } catch (Exception e) {
+                Log.w(TAG, "getFrameProcessorStats: " + slot.name, e);
+            }
+        }
+        return stats;
+    }
+
+    // Built-in processor: serves every sample request queued when the frame arrived, plus the
+    // frame stream and the latest-frame cache when they are due for a new frame.
+    private final class SnapshotProcessor implements FrameProcessor {
+
+        // Work claimed in wantsFrame() for the frame about to be processed; analyzer thread only
+        private List<SampleRequest> requests;
+        private FrameStreamState stream;
+        private SampleCacheState cache;
+
+        @Override
+        public boolean wantsFrame() {
+            synchronized (analysisLock) {
+                long now = SystemClock.elapsedRealtimeNanos();
+                stream = pollFrameStream(now);
+                cache = pollSampleCache(now);
+                // GATEKEEPER: If no snapshot requested and no stream or cache frame due, skip the frame.
+                if (pendingSampleRequests.isEmpty() && stream == null && cache == null) {
+                    return false;
+                }
+                requests = new ArrayList<>(pendingSampleRequests.values());
+                // Single-frame requests are claimed now; sharpest-of-N requests stay queued until their
+                // selection completes, so a stop can still fail them
+                for (Iterator<SampleRequest> it = pendingSampleRequests.values().iterator(); it.hasNext(); ) {
+                    if (!it.next().selectsSharpest()) it.remove();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public JSONObject process(ImageProxy imageProxy) {
+            List<SampleRequest> requests = this.requests;
+            FrameStreamState stream = this.stream;
+            SampleCacheState cache = this.cache;
+            this.requests = null;
+            this.stream = null;
+            this.cache = null;
+
+            // Convert only the region each request needs, straight from the YUV planes
+            int frameWidth = imageProxy.getWidth();
+            int frameHeight = imageProxy.getHeight();
+            Bitmap fullFrame = null;
+            // Full-frame requests with the same format and quality share one encoded result
+            Map<String, String> sharedResults = new HashMap<>();
+            try {
+                Log.d(TAG, "ImageAnalysis: Processing frame for " + requests.size() + " sample request(s)");
+                for (SampleRequest request : requests) {
+                    if (request.selectsSharpest()) {
+                        scoreSharpestCandidate(request, imageProxy);
+                        continue;
+                    }
+                    try {
+                        YuvFrameConverter.Region region = request.region != null ? request.region.select(frameWidth, frameHeight) : null;
+                        String sharedKey = request.format + "@" + request.quality;
+                        String base64 = region == null ? sharedResults.get(sharedKey) : null;
+                        if (base64 == null) {
+                            if (region == null) {
+                                if (fullFrame == null) fullFrame = YuvFrameConverter.toBitmap(imageProxy, null, framePool);
+                                base64 = encodeBitmapToBase64(fullFrame, request.format, request.quality);
+                                sharedResults.put(sharedKey, base64);
+                            } else {
+                                Bitmap regionBitmap = YuvFrameConverter.toBitmap(imageProxy, region, framePool);
+                                base64 = encodeBitmapToBase64(regionBitmap, request.format, request.quality);
+                                framePool.releaseBitmap(regionBitmap);
+                            }
+                        }
+
+                        // Return result to Capacitor/JS
+                        if (listener != null) {
+                            listener.onSampleTaken(request.id, base64, 0);
+                        }
+                    } catch (Exception e) {
+                        Log.e(TAG, "ImageAnalysis processing error", e);
+                        if (listener != null) listener.onSampleTakenError(request.id, e.getMessage());
+                    } finally {
+                        endOperation("captureSample");
+                    }
+                }
+
+                if (stream != null) {
+                    emitStreamFrame(stream, imageProxy);
+                }
+                if (cache != null) {
+                    refreshSampleCache(cache, imageProxy);
+                }
+            } finally {
+                // Memory cleanup; the dispatcher closes the image
+                framePool.releaseBitmap(fullFrame);
+            }
+            // Samples and stream frames go through their own listener callbacks
+            return null;
+        }
+
+        // Keeps the request's sharpest frame so far as a bitmap (the image itself must be closed),
+        // and encodes and delivers it once the frame count or time window is reached
+        private void scoreSharpestCandidate(SampleRequest request, ImageProxy imageProxy) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            boolean finished = false;
+            try {
+                int frameWidth = imageProxy.getWidth();
+                int frameHeight = imageProxy.getHeight();
+                YuvFrameConverter.Region region = request.region != null ? request.region.select(frameWidth, frameHeight) : null;
+                if (region == null) {
+                    // Full frame; the explicit region is what the sharpness scorer reads
+                    region = new YuvFrameConverter.Region(new Rect(0, 0, frameWidth, frameHeight), frameWidth, frameHeight);
+                }
+                if (request.framesScored == 0) request.firstFrameNanos = now;
+                request.framesScored++;
+                double score = SharpnessScorer.score(imageProxy, region.crop);
+                if (score > request.bestScore) {
+                    framePool.releaseBitmap(request.best);
+                    request.best = YuvFrameConverter.toBitmap(imageProxy, region, framePool);
+                    request.bestScore = score;
+                }
+                if (!request.selectionDone(now)) return;
+
+                finished = true;
+                if (!claimSampleRequest(request)) return; // failed by a stop meanwhile
+                Log.d(TAG, "Sharpest of " + request.framesScored + " frames (score " + request.bestScore + ") for " + request.id);
+                String base64 = encodeBitmapToBase64(request.best, request.format, request.quality);
+                if (listener != null) listener.onSampleTaken(request.id, base64, 0);
+                endOperation("captureSample");
+            } catch (Exception e) {
+                Log.e(TAG, "ImageAnalysis sharpness selection error", e);
+                if (finished || claimSampleRequest(request)) {
+                    if (listener != null) listener.onSampleTakenError(request.id, e.getMessage());
+                    endOperation("captureSample");
+                }
+                finished = true;
+            } finally {
+                if (finished) {
+                    framePool.releaseBitmap(request.best);
+                    request.best = null;
+                }
+            }
+        }
+
+        private boolean claimSampleRequest(SampleRequest request) {
+            synchronized (analysisLock) {
+                if (pendingSampleRequests.get(request.id) != request) return false;
+                pendingSampleRequests.remove(request.id);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Starts pushing analysis frames to the listener as encoded stream frames.
+     * Frames are throttled to maxFps, and while the previous frame has not been
+     * acknowledged (or ackTimeoutMs elapsed) new frames are dropped and counted.
+     * With a sceneChangeThreshold > 0, a frame is only emitted when its 32x32 luma signature
+     * differs from the last emitted frame by at least that much (mean absolute difference, 0-255).
+     */
+    public void startFrameStream(int maxFps, int size, int quality, long ackTimeoutMs, double sceneChangeThreshold)
+        throws Exception {
+        if (imageAnalysis == null) {
+            throw new Exception("Camera not ready (Analysis missing)");
+        }
+        synchronized (analysisLock) {
+            frameStream = new FrameStreamState(maxFps, size, quality, ackTimeoutMs, sceneChangeThreshold);
+        }
+        Log.d(
+            TAG,
+            "startFrameStream: maxFps=" + maxFps + ", size=" + size + ", quality=" + quality + ", sceneChange=" + sceneChangeThreshold
+        );
+    }
+
+    /** Stops the frame stream and returns { framesSent, framesDropped, framesUnchanged }, or null if no stream was active. */
+    public long[] stopFrameStream() {
+        synchronized (analysisLock) {
+            FrameStreamState stream = frameStream;
+            frameStream = null;
+            if (stream == null) return null;
+            return new long[] { stream.framesSent, stream.framesDropped, stream.framesUnchanged };
+        }
+    }
+
+    public boolean isFrameStreaming() {
+        synchronized (analysisLock) {
+            return frameStream != null;
+        }
+    }
+
+    /** Marks a stream frame as consumed by JS so the next frame can be emitted. */
+    public void acknowledgeStreamFrame(long frameId) {
+        synchronized (analysisLock) {
+            if (frameStream != null && frameStream.inFlightFrameId == frameId) {
+                frameStream.inFlightFrameId = 0;
+            }
+        }
+    }
+
+    // Must be called with analysisLock held. Returns the stream if this frame should be emitted.
+    private FrameStreamState pollFrameStream(long nowNanos) {
+        FrameStreamState stream = frameStream;
+        if (stream == null) return null;
+        if (nowNanos - stream.lastEmitNanos < stream.minIntervalNanos) {
+            return null; // FPS cap
+        }
+        if (stream.inFlightFrameId != 0 && nowNanos - stream.inFlightSinceNanos < stream.ackTimeoutNanos) {
+            // Backpressure: previous frame has not been consumed yet
+            stream.framesDropped++;
+            stream.lastEmitNanos = nowNanos;
+            return null;
+        }
+        stream.lastEmitNanos = nowNanos;
+        stream.inFlightFrameId = ++stream.lastFrameId;
+        stream.inFlightSinceNanos = nowNanos;
+        return stream;
+    }
+
+    private void releaseStreamFrame(FrameStreamState stream) {
+        synchronized (analysisLock) {
+            stream.inFlightFrameId = 0;
+        }
+    }
+
+    private void emitStreamFrame(FrameStreamState stream, ImageProxy imageProxy) {
+        long frameId;
+        long dropped;
+        synchronized (analysisLock) {
+            if (frameStream != stream) return; // stopped or restarted meanwhile
+            frameId = stream.inFlightFrameId;
+            dropped = stream.framesDropped;
+        }
+        try {
+            double sceneDiff = -1;
+            if (stream.sceneDetector != null) {
+                sceneDiff = stream.sceneDetector.measure(imageProxy);
+                if (sceneDiff < stream.sceneChangeThreshold) {
+                    // Scene unchanged: skip conversion and encoding entirely
+                    synchronized (analysisLock) {
+                        stream.framesUnchanged++;
+                        stream.inFlightFrameId = 0;
+                    }
+                    return;
+                }
+            }
+
+            YuvFrameConverter.Region region = downscaleRegion(stream.size).select(imageProxy.getWidth(), imageProxy.getHeight());
+            Bitmap scaled = YuvFrameConverter.toBitmap(imageProxy, region, framePool);
+            String base64 = encodeBitmapToBase64(scaled, ImageEncoder.JPEG, stream.quality);
+            int width = scaled.getWidth();
+            int height = scaled.getHeight();
+            framePool.releaseBitmap(scaled);
+            if (stream.sceneDetector != null) {
+                stream.sceneDetector.commit();
+            }
+            long unchanged;
+            synchronized (analysisLock) {
+                stream.framesSent++;
+                unchanged = stream.framesUnchanged;
+            }
+            if (listener != null) {
+                listener.onStreamFrame(frameId, base64, width, height, dropped, sceneDiff, unchanged);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "ImageAnalysis stream frame error", e);
+            releaseStreamFrame(stream);
+        }
+    }
+
+    /**
+     * Enables the latest-frame cache: up to maxFps times per second the newest analysis frame is
+     * scaled to size and pre-encoded at quality, so captureSample can resolve without waiting.
+     */
+    public void enableSampleCache(int maxFps, int size, int quality) throws Exception {
+        if (imageAnalysis == null) {
+            throw new Exception("Camera not ready (Analysis missing)");
+        }
+        synchronized (analysisLock) {
+            sampleCache = new SampleCacheState(maxFps, size, quality);
+        }
+        Log.d(TAG, "enableSampleCache: maxFps=" + maxFps + ", size=" + size + ", quality=" + quality);
+    }
+
+    public void disableSampleCache() {
+        synchronized (analysisLock) {
+            sampleCache = null;
+        }
+    }
+
+    private boolean serveSampleFromCache(String requestId, long maxAgeMs) {
+        String base64;
+        long ageMs;
+        synchronized (analysisLock) {
+            if (sampleCache == null || sampleCache.base64 == null) return false;
+            ageMs = (SystemClock.elapsedRealtimeNanos() - sampleCache.cachedAtNanos) / 1_000_000L;
+            if (maxAgeMs >= 0 && ageMs > maxAgeMs) return false;
+            base64 = sampleCache.base64;
+        }
+        if (listener != null) listener.onSampleTaken(requestId, base64, ageMs);
+        return true;
+    }
+
+    // Must be called with analysisLock held. Returns the cache if this frame should refresh it.
+    private SampleCacheState pollSampleCache(long nowNanos) {
+        SampleCacheState cache = sampleCache;
+        if (cache == null || nowNanos - cache.lastRefreshNanos < cache.minIntervalNanos) return null;
+        cache.lastRefreshNanos = nowNanos;
+        return cache;
+    }
+
+    private void refreshSampleCache(SampleCacheState cache, ImageProxy imageProxy) {
+        try {
+            YuvFrameConverter.Region region = downscaleRegion(cache.size).select(imageProxy.getWidth(), imageProxy.getHeight());
+            Bitmap scaled = YuvFrameConverter.toBitmap(imageProxy, region, framePool);
+            String base64 = encodeBitmapToBase64(scaled, ImageEncoder.JPEG, cache.quality);
+            framePool.releaseBitmap(scaled);
+            synchronized (analysisLock) {
+                cache.base64 = base64;
+                cache.cachedAtNanos = SystemClock.elapsedRealtimeNanos();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "ImageAnalysis sample cache refresh error", e);
+        }
+    }
+
+    // Analyzer thread only: compresses into the pooled output buffer and Base64-encodes without copying
+    // it; HEIF is written through a file, so it takes the plain byte array route
+    private String encodeBitmapToBase64(Bitmap bitmap, String format, int quality) throws IOException {
+        if (ImageEncoder.HEIF.equals(format)) {
+            return Base64.encodeToString(ImageEncoder.encode(bitmap, format, quality, null), Base64.NO_WRAP);
+        }
+        return framePool.encodeToBase64(bitmap.getWidth() * bitmap.getHeight() / 2, (out) ->
+            ImageEncoder.compress(bitmap, format, quality, out)
+        );
+    }
 
+    private void failPendingSampleRequests(String message) {
+        List<SampleRequest> requests;
         synchronized (analysisLock) {
-            this.pendingQuality = quality;
-            this.pendingProcessor = processor;
-            this.captureNextFrame = true; // Trigger the Analyzer
+            if (pendingSampleRequests.isEmpty()) return;
+            requests = new ArrayList<>(pendingSampleRequests.values());
+            pendingSampleRequests.clear();
+        }
+        for (SampleRequest request : requests) {
+            if (listener != null) {
+                try {
+                    listener.onSampleTakenError(request.id, message);
+                } catch (Exception ignored) {}
+            }
         }
-        Log.d(TAG, "Snapshot requested via ImageAnalysis");
     }
 
     // 6. Helper to correctly convert ImageProxy to Bitmap with Rotation
@@ -1817,14 +2908,17 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         return bytes;
     }
 
-    private Bitmap cropBitmapToMatchPreview(Bitmap image) {
+    // Centered crop of an upright imgW x imgH image matching the preview's aspect ratio
+    // (the full image when the preview is not laid out)
+    private Rect previewCropRect(int imgW, int imgH) {
+        Rect full = new Rect(0, 0, imgW, imgH);
         if (previewContainer == null || previewView == null) {
-            return image;
+            return full;
         }
         int containerWidth = previewContainer.getWidth();
         int containerHeight = previewContainer.getHeight();
         if (containerWidth == 0 || containerHeight == 0) {
-            return image;
+            return full;
         }
         // Compute preview aspect based on actual camera content bounds
         Rect bounds = getActualCameraBounds();
@@ -1832,8 +2926,6 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         int previewH = Math.max(1, bounds.height());
         float previewRatio = (float) previewW / (float) previewH;
 
-        int imgW = image.getWidth();
-        int imgH = image.getHeight();
         float imgRatio = (float) imgW / (float) imgH;
 
         int targetW = imgW;
@@ -1847,11 +2939,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         }
         int x = Math.max(0, (imgW - targetW) / 2);
         int y = Math.max(0, (imgH - targetH) / 2);
-        try {
-            return Bitmap.createBitmap(image, x, y, Math.min(targetW, imgW - x), Math.min(targetH, imgH - y));
-        } catch (Exception ignore) {
-            return image;
-        }
+        return new Rect(x, y, x + Math.min(targetW, imgW - x), y + Math.min(targetH, imgH - y));
     }
 
     // not working for xiaomi https://xiaomi.eu/community/threads/mi-11-ultra-unable-to-access-camera-lenses-in-apps-camera2-api.61456/
@@ -2590,6 +3678,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
 
         Log.d(TAG, "flipCamera: Switching from " + currentPosition + " to " + newPosition);
 
+        CameraSessionConfiguration previousConfig = sessionConfig;
         sessionConfig = new CameraSessionConfiguration(
             null, // deviceId - clear device ID to force position-based selection
             newPosition, // position
@@ -2609,12 +3698,14 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
             sessionConfig.getDisableFocusIndicator(), // disableFocusIndicator
             sessionConfig.isVideoModeEnabled() // enableVideoMode
         );
+        sessionConfig.copySessionSettings(previousConfig);
 
         // Clear current device ID to force position-based selection
         currentDeviceId = null;
 
-        // Camera operations must run on main thread
-        cameraExecutor.execute(() -> {
+        // Camera operations must run on main thread (bindCameraUseCases posts there itself);
+        // never on the analysis or capture lanes, where a rebind would stall frames or photos
+        mainExecutor.execute(() -> {
             currentCameraSelector = buildCameraSelector();
             bindCameraUseCases();
         });
@@ -2706,6 +3797,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         Log.d(TAG, "Auto-centering will be applied (matching iOS behavior)");
 
         // Match iOS behavior: when aspect ratio changes, always auto-center
+        CameraSessionConfiguration previousConfig = sessionConfig;
         sessionConfig = new CameraSessionConfiguration(
             sessionConfig.getDeviceId(),
             sessionConfig.getPosition(),
@@ -2725,6 +3817,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
             sessionConfig.getDisableFocusIndicator(),
             sessionConfig.isVideoModeEnabled()
         );
+        sessionConfig.copySessionSettings(previousConfig);
         sessionConfig.setCentered(true);
 
         // Update layout and rebind camera with new aspect ratio
@@ -2780,6 +3873,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
         Log.d(TAG, "Auto-centering will be applied (matching iOS behavior)");
 
         // Match iOS behavior: when aspect ratio changes, always auto-center
+        CameraSessionConfiguration previousConfig = sessionConfig;
         sessionConfig = new CameraSessionConfiguration(
             sessionConfig.getDeviceId(),
             sessionConfig.getPosition(),
@@ -2799,6 +3893,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
             sessionConfig.getDisableFocusIndicator(),
             sessionConfig.isVideoModeEnabled()
         );
+        sessionConfig.copySessionSettings(previousConfig);
         sessionConfig.setCentered(true);
 
         // Update layout and rebind camera with new aspect ratio
@@ -2841,6 +3936,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
     public void setGridMode(String gridMode) {
         if (sessionConfig != null) {
             Log.d(TAG, "setGridMode: Changing grid mode to: " + gridMode);
+            CameraSessionConfiguration previousConfig = sessionConfig;
             sessionConfig = new CameraSessionConfiguration(
                 sessionConfig.getDeviceId(),
                 sessionConfig.getPosition(),
@@ -2860,6 +3956,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                 sessionConfig.getDisableFocusIndicator(),
                 sessionConfig.isVideoModeEnabled()
             );
+            sessionConfig.copySessionSettings(previousConfig);
 
             // Update the grid overlay immediately
             if (gridOverlayView != null) {
@@ -3179,6 +4276,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                         );
                     }
 
+                    CameraSessionConfiguration previousConfig = sessionConfig;
                     sessionConfig = new CameraSessionConfiguration(
                         sessionConfig.getDeviceId(),
                         sessionConfig.getPosition(),
@@ -3198,6 +4296,7 @@ public class CameraXView implements LifecycleOwner, LifecycleObserver {
                         sessionConfig.getDisableFocusIndicator(),
                         sessionConfig.isVideoModeEnabled()
                     );
+                    sessionConfig.copySessionSettings(previousConfig);
 
                     // If aspect ratio changed due to size update, rebind camera
                     if (isRunning && !Objects.equals(currentAspectRatio, calculatedAspectRatio)) {
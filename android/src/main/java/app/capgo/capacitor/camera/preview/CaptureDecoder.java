@@ -0,0 +1,124 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.os.Build;
+import java.io.IOException;
+
+/**
+ * Decodes captured JPEGs straight to the output geometry. The JPEG is decoded with the largest
+ * power-of-two inSampleSize that still covers the target size, then rotation and the remaining
+ * scale are applied in a single matrix pass. Peak memory therefore tracks the output size rather
+ * than the sensor size. Full-resolution output goes through {@link StripEncoder} instead.
+ */
+final class CaptureDecoder {
+
+    private CaptureDecoder() {}
+
+    /** Width and height of the encoded image, before EXIF rotation. */
+    static int[] readSize(byte[] jpeg) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Unable to read JPEG dimensions");
+        }
+        return new int[] { bounds.outWidth, bounds.outHeight };
+    }
+
+    /**
+     * Size that fits within maxWidth/maxHeight (either may be null) keeping the aspect ratio.
+     * Matches the historical resize behavior, including upscaling.
+     */
+    static int[] fitWithin(int width, int height, Integer maxWidth, Integer maxHeight) {
+        float aspectRatio = (float) width / height;
+        int targetWidth;
+        int targetHeight;
+        if (maxWidth != null && maxHeight != null) {
+            // Both dimensions specified - fit within both maximums
+            float maxAspectRatio = (float) maxWidth / maxHeight;
+            if (aspectRatio > maxAspectRatio) {
+                targetWidth = maxWidth;
+                targetHeight = (int) (maxWidth / aspectRatio);
+            } else {
+                targetWidth = (int) (maxHeight * aspectRatio);
+                targetHeight = maxHeight;
+            }
+        } else if (maxWidth != null) {
+            targetWidth = maxWidth;
+            targetHeight = (int) (maxWidth / aspectRatio);
+        } else if (maxHeight != null) {
+            targetWidth = (int) (maxHeight * aspectRatio);
+            targetHeight = maxHeight;
+        } else {
+            targetWidth = width;
+            targetHeight = height;
+        }
+        return new int[] { Math.max(1, targetWidth), Math.max(1, targetHeight) };
+    }
+
+    /** Decodes the JPEG upright (rotated by rotationDegrees) and fitted within maxWidth/maxHeight. */
+    static Bitmap decodeFitted(byte[] jpeg, int rotationDegrees, Integer maxWidth, Integer maxHeight) throws IOException {
+        int[] size = readSize(jpeg);
+        boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightW = swap ? size[1] : size[0];
+        int uprightH = swap ? size[0] : size[1];
+        int[] target = fitWithin(uprightW, uprightH, maxWidth, maxHeight);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSizeFor(uprightW, uprightH, target[0], target[1]);
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (decoded == null) throw new IOException("Unable to decode JPEG");
+        return transform(decoded, rotationDegrees, target[0], target[1]);
+    }
+
+    // Largest power of two that keeps the decoded image at or above the target size
+    static int sampleSizeFor(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Maps a rectangle in upright (EXIF-rotated) coordinates back to the encoded image's coordinates
+    static Rect toSourceRect(Rect upright, int rotationDegrees, int srcW, int srcH) {
+        switch (rotationDegrees) {
+            case 90:
+                return new Rect(upright.top, srcH - upright.right, upright.bottom, srcH - upright.left);
+            case 180:
+                return new Rect(srcW - upright.right, srcH - upright.bottom, srcW - upright.left, srcH - upright.top);
+            case 270:
+                return new Rect(srcW - upright.bottom, upright.left, srcW - upright.top, upright.right);
+            default:
+                return new Rect(upright);
+        }
+    }
+
+    // Rotation and the remaining scale in one pass; recycles the input when a new bitmap is produced
+    private static Bitmap transform(Bitmap decoded, int rotationDegrees, int outW, int outH) {
+        boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        float sx = (float) (swap ? outH : outW) / decoded.getWidth();
+        float sy = (float) (swap ? outW : outH) / decoded.getHeight();
+        if (rotationDegrees == 0 && decoded.getWidth() == outW && decoded.getHeight() == outH) {
+            return decoded;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setScale(sx, sy);
+        matrix.postRotate(rotationDegrees);
+        Bitmap result = Bitmap.createBitmap(decoded, 0, 0, decoded.getWidth(), decoded.getHeight(), matrix, true);
+        if (result != decoded) decoded.recycle();
+        return result;
+    }
+
+    @SuppressWarnings("deprecation")
+    static BitmapRegionDecoder newRegionDecoder(byte[] jpeg) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length);
+        }
+        return BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+    }
+}
@@ -0,0 +1,261 @@
+package app.capgo.capacitor.camera.preview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directory of captured files with a byte budget and oldest-first eviction.
+ *
+ * Every file is tracked in an in-memory index, kept in write order and persisted next to the
+ * files, so listing, stats and cleanup never scan the directory. Reads of the files go straight
+ * to disk from the WebView, so the store cannot see them; eviction is by age, not by use. The
+ * index is rebuilt from the directory only when it is missing or unreadable, and entries whose
+ * file was deleted behind its back (the OS clears cache dirs) are dropped on load. Pinned files
+ * (a burst that is still running) are skipped by eviction until unpinned. Names combine the
+ * capture time with a per-store counter and never collide. Thread-safe; meant to be called from
+ * the I/O lane.
+ */
+final class CaptureStore {
+
+    static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String INDEX_FILE = ".index";
+    private static final String INDEX_VERSION = "1";
+
+    private static final class Entry {
+
+        final long bytes;
+        final long writtenAt;
+
+        Entry(long bytes, long writtenAt) {
+            this.bytes = bytes;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    private final File directory;
+    // File name -> entry, oldest first
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>();
+    // Names eviction must skip
+    private final Set<String> pinned = new HashSet<>();
+    private long totalBytes = 0;
+    private long maxBytes;
+    private long evictedFiles = 0;
+    private long evictedBytes = 0;
+    private long counter = 0;
+    private boolean loaded = false;
+
+    CaptureStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    File write(String prefix, String extension, byte[] bytes) throws IOException {
+        return write(prefix, extension, bytes, false);
+    }
+
+    /**
+     * Writes bytes to a new uniquely named file (prefix + time + counter + extension), then
+     * evicts the oldest unpinned files until the store fits its budget again. The new file
+     * is never evicted, even when it alone exceeds the budget; with pin it stays protected
+     * until passed to unpin.
+     */
+    synchronized File write(String prefix, String extension, byte[] bytes, boolean pin) throws IOException {
+        ensureLoaded();
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date());
+        File file;
+        do {
+            file = new File(directory, prefix + stamp + "_" + (counter++) + extension);
+        } while (index.containsKey(file.getName()) || file.exists());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        index.put(file.getName(), new Entry(bytes.length, System.currentTimeMillis()));
+        totalBytes += bytes.length;
+        if (pin) pinned.add(file.getName());
+        evictToBudget(file.getName());
+        saveIndexQuietly();
+        return file;
+    }
+
+    /**
+     * Makes pinned files evictable again. Nothing is evicted here, so paths just handed out stay
+     * on disk until the next write or budget change.
+     */
+    synchronized void unpin(Collection<String> paths) {
+        for (String path : paths) {
+            String name = nameOf(path);
+            if (name != null) pinned.remove(name);
+        }
+    }
+
+    /** Deletes a stored file. False when the path is not managed by this store. */
+    synchronized boolean remove(String path) {
+        ensureLoaded();
+        String name = nameOf(path);
+        Entry entry = name != null ? index.remove(name) : null;
+        if (entry == null) return false;
+        pinned.remove(name);
+        totalBytes -= entry.bytes;
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, name).delete();
+        saveIndexQuietly();
+        return true;
+    }
+
+    /** Deletes the files written more than olderThanMs ago (all of them when 0); returns {files, bytes}. */
+    synchronized long[] purge(long olderThanMs) {
+        ensureLoaded();
+        long cutoff = System.currentTimeMillis() - olderThanMs;
+        long files = 0;
+        long bytes = 0;
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (olderThanMs > 0 && e.getValue().writtenAt > cutoff) continue;
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, e.getKey()).delete();
+            files++;
+            bytes += e.getValue().bytes;
+            totalBytes -= e.getValue().bytes;
+            pinned.remove(e.getKey());
+            it.remove();
+        }
+        saveIndexQuietly();
+        return new long[] { files, bytes };
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        ensureLoaded();
+        this.maxBytes = maxBytes;
+        evictToBudget(null);
+        saveIndexQuietly();
+    }
+
+    /** {files, bytes, maxBytes, evictedFiles, evictedBytes}; evictions count since creation. */
+    synchronized long[] stats() {
+        ensureLoaded();
+        return new long[] { index.size(), totalBytes, maxBytes, evictedFiles, evictedBytes };
+    }
+
+    private void evictToBudget(String keep) {
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().equals(keep) || pinned.contains(e.getKey())) continue;
+            //noinspection ResultOfMethodCallIgnored
+            new File(directory, e.getKey()).delete();
+            totalBytes -= e.getValue().bytes;
+            evictedFiles++;
+            evictedBytes += e.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    // Name of a file directly inside the store, or null for any other path
+    private String nameOf(String path) {
+        if (path == null) return null;
+        if (path.startsWith("file://")) path = path.substring("file://".length());
+        File file = new File(path);
+        File parent = file.getParentFile();
+        return parent != null && parent.getAbsolutePath().equals(directory.getAbsolutePath()) ? file.getName() : null;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        if (!loadIndex()) {
+            rebuildIndex();
+            saveIndexQuietly();
+        }
+        evictToBudget(null);
+    }
+
+    private boolean loadIndex() {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile()) return false;
+        boolean missingFiles = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            if (!INDEX_VERSION.equals(reader.readLine())) return false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 3) return false;
+                Entry entry = new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                if (!new File(directory, parts[0]).isFile()) {
+                    missingFiles = true;
+                    continue;
+                }
+                index.put(parts[0], entry);
+                totalBytes += entry.bytes;
+            }
+        } catch (IOException | NumberFormatException e) {
+            index.clear();
+            totalBytes = 0;
+            return false;
+        }
+        if (missingFiles) saveIndexQuietly();
+        return true;
+    }
+
+    // One directory scan, oldest modification first
+    private void rebuildIndex() {
+        index.clear();
+        totalBytes = 0;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (!f.isFile() || f.getName().startsWith(".")) continue;
+            index.put(f.getName(), new Entry(f.length(), f.lastModified()));
+            totalBytes += f.length();
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        File tmp = new File(directory, INDEX_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(INDEX_VERSION);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                writer.write(e.getKey() + "\t" + e.getValue().bytes + "\t" + e.getValue().writtenAt + "\n");
+            }
+        }
+        if (!tmp.renameTo(new File(directory, INDEX_FILE))) {
+            throw new IOException("Unable to replace capture index");
+        }
+    }
+
+    private void saveIndexQuietly() {
+        try {
+            saveIndex();
+        } catch (IOException ignored) {
+            // Rebuilt from the directory on next load
+        }
+    }
+}
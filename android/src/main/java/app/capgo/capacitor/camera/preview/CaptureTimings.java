@@ -0,0 +1,167 @@
+package app.capgo.capacitor.camera.preview;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling per-stage latency statistics for photo captures.
+ *
+ * Each capture carries a {@link Trace} through the capture, process and I/O lanes; every stage is
+ * timed on the monotonic clock as the time since the previous stage ended, so the stages of a
+ * capture add up to its total. Finished traces are recorded here: the last WINDOW samples of
+ * each stage are kept, from which percentiles and a histogram over fixed millisecond buckets
+ * are computed on demand. Thread-safe.
+ */
+final class CaptureTimings {
+
+    static final int WINDOW = 200;
+    /** Upper bounds (inclusive, ms) of the histogram buckets; a last bucket counts everything above. */
+    static final long[] BUCKET_BOUNDS_MS = { 5, 10, 25, 50, 100, 250, 500, 1000, 2500 };
+    static final String TOTAL = "total";
+
+    /** Stage timings of one capture. Used by one lane at a time; lane hand-offs publish it. */
+    static final class Trace {
+
+        private final long startNanos = System.nanoTime();
+        private long lastNanos = startNanos;
+        private final LinkedHashMap<String, Long> stages = new LinkedHashMap<>();
+        private long peakBytes = -1;
+
+        /** Ends a stage now; repeated stage names add up. */
+        void lap(String stage) {
+            long now = System.nanoTime();
+            Long previous = stages.get(stage);
+            stages.put(stage, (previous != null ? previous : 0L) + (now - lastNanos));
+            lastNanos = now;
+        }
+
+        /** Peak memory of the pixel pipeline, when the capture was re-encoded. */
+        void setPeakBytes(long bytes) {
+            peakBytes = bytes;
+        }
+
+        /** -1 when no pixels were decoded. */
+        long getPeakBytes() {
+            return peakBytes;
+        }
+
+        /** Stage durations in ms, in stage order, followed by the total since the trace started. */
+        Map<String, Double> toMillis() {
+            LinkedHashMap<String, Double> out = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> e : stages.entrySet()) {
+                out.put(e.getKey(), toMs(e.getValue()));
+            }
+            out.put(TOTAL, toMs(lastNanos - startNanos));
+            return out;
+        }
+    }
+
+    private static final class Samples {
+
+        final long[] nanos = new long[WINDOW];
+        int count = 0; // valid samples, at most WINDOW
+        int next = 0; // ring position of the next sample
+        long recorded = 0; // samples recorded since reset
+
+        void add(long value) {
+            nanos[next] = value;
+            next = (next + 1) % WINDOW;
+            count = Math.min(WINDOW, count + 1);
+            recorded++;
+        }
+    }
+
+    /** Summary of one stage over the window. */
+    static final class StageStats {
+
+        final long recorded;
+        final int count;
+        final double mean;
+        final double min;
+        final double p50;
+        final double p90;
+        final double p99;
+        final double max;
+        final int[] buckets; // counts per BUCKET_BOUNDS_MS bucket, plus one for everything above
+
+        StageStats(long recorded, int count, double mean, double min, double p50, double p90, double p99, double max, int[] buckets) {
+            this.recorded = recorded;
+            this.count = count;
+            this.mean = mean;
+            this.min = min;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+            this.buckets = buckets;
+        }
+    }
+
+    // Insertion order = order in which stages were first seen, i.e. pipeline order
+    private final LinkedHashMap<String, Samples> stages = new LinkedHashMap<>();
+
+    synchronized void record(Trace trace) {
+        for (Map.Entry<String, Long> e : trace.stages.entrySet()) {
+            record(e.getKey(), e.getValue());
+        }
+        record(TOTAL, trace.lastNanos - trace.startNanos);
+    }
+
+    /** Records a stage measured outside of a trace (e.g. the bridge resolve). */
+    synchronized void record(String stage, long nanos) {
+        Samples samples = stages.get(stage);
+        if (samples == null) {
+            samples = new Samples();
+            stages.put(stage, samples);
+        }
+        samples.add(nanos);
+    }
+
+    synchronized Map<String, StageStats> snapshot() {
+        LinkedHashMap<String, StageStats> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Samples> e : stages.entrySet()) {
+            Samples samples = e.getValue();
+            long[] sorted = Arrays.copyOf(samples.nanos, samples.count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            int[] buckets = new int[BUCKET_BOUNDS_MS.length + 1];
+            for (long value : sorted) {
+                sum += value;
+                int bucket = 0;
+                while (bucket < BUCKET_BOUNDS_MS.length && value > BUCKET_BOUNDS_MS[bucket] * 1_000_000L) bucket++;
+                buckets[bucket]++;
+            }
+            out.put(
+                e.getKey(),
+                new StageStats(
+                    samples.recorded,
+                    samples.count,
+                    toMs(sum / sorted.length),
+                    toMs(sorted[0]),
+                    toMs(percentile(sorted, 50)),
+                    toMs(percentile(sorted, 90)),
+                    toMs(percentile(sorted, 99)),
+                    toMs(sorted[sorted.length - 1]),
+                    buckets
+                )
+            );
+        }
+        return out;
+    }
+
+    synchronized void reset() {
+        stages.clear();
+    }
+
+    // Nearest-rank percentile of a sorted, non-empty array
+    private static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    // Milliseconds with 0.1 ms resolution
+    private static double toMs(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
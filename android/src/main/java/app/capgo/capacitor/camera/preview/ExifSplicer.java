@@ -0,0 +1,444 @@
+package app.capgo.capacitor.camera.preview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Moves the EXIF APP1 segment of the original capture into a re-encoded JPEG in one pass.
+ *
+ * The segment is lifted as raw bytes and only the tags we change are touched: Orientation is
+ * reset to 1 and the image dimensions (IFD0 ImageWidth/ImageLength, EXIF PixelX/YDimension) are
+ * updated. Existing entries are patched in place; when a tag is missing, its IFD is rewritten at
+ * the end of the TIFF block with the extra entry, leaving every other offset valid. The result
+ * is assembled with a single output allocation. The same patched block can be carried into WebP
+ * (EXIF chunk), PNG (eXIf chunk) and HEIF outputs. Pure Java with no Android dependencies.
+ */
+final class ExifSplicer {
+
+    static final int TAG_IMAGE_WIDTH = 0x0100;
+    static final int TAG_IMAGE_LENGTH = 0x0101;
+    static final int TAG_ORIENTATION = 0x0112;
+    static final int TAG_EXIF_IFD = 0x8769;
+    static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+    static final int TYPE_SHORT = 3;
+    static final int TYPE_LONG = 4;
+
+    private static final byte[] EXIF_HEADER = { 'E', 'x', 'i', 'f', 0, 0 };
+    private static final byte[] RIFF = { 'R', 'I', 'F', 'F' };
+    private static final byte[] WEBP = { 'W', 'E', 'B', 'P' };
+    private static final byte[] VP8X = { 'V', 'P', '8', 'X' };
+    private static final byte[] VP8L = { 'V', 'P', '8', 'L' };
+    private static final byte[] WEBP_EXIF = { 'E', 'X', 'I', 'F' };
+    private static final int VP8X_FLAG_EXIF = 0x08;
+    private static final int VP8X_FLAG_ALPHA = 0x10;
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] PNG_IHDR = { 'I', 'H', 'D', 'R' };
+    private static final byte[] PNG_EXIF = { 'e', 'X', 'I', 'f' };
+    private static final int MAX_SEGMENT_PAYLOAD = 0xFFFF - 2;
+
+    private ExifSplicer() {}
+
+    /**
+     * Returns targetJpeg with the EXIF of sourceJpeg (orientation normalized, dimensions updated
+     * when given) in place of any EXIF it had. A minimal EXIF block is written when the source
+     * has none.
+     */
+    static byte[] splice(byte[] targetJpeg, byte[] sourceJpeg, Integer finalWidth, Integer finalHeight) throws IOException {
+        if (!isJpeg(targetJpeg)) throw new IOException("Target is not a JPEG");
+
+        Tiff tiff = sourceTiff(sourceJpeg, finalWidth, finalHeight);
+        if (EXIF_HEADER.length + tiff.length > MAX_SEGMENT_PAYLOAD) throw new IOException("EXIF segment too large");
+
+        // Insert after a leading JFIF APP0 (like other writers do), dropping any EXIF the target has
+        int insertAt = 2;
+        int[] first = nextSegment(targetJpeg, 2);
+        if (first != null && first[2] == 0xE0 && hasPrefix(targetJpeg, first[0] + 4, new byte[] { 'J', 'F', 'I', 'F', 0 })) {
+            insertAt = first[1];
+        }
+        int removed = 0;
+        for (int[] s = findExifSegment(targetJpeg, 2); s != null; s = findExifSegment(targetJpeg, s[1])) {
+            removed += s[1] - s[0];
+        }
+
+        int segmentLength = 4 + EXIF_HEADER.length + tiff.length;
+        byte[] out = new byte[targetJpeg.length - removed + segmentLength];
+        int o = copyWithoutExif(targetJpeg, 0, insertAt, out, 0);
+        out[o++] = (byte) 0xFF;
+        out[o++] = (byte) 0xE1;
+        out[o++] = (byte) ((segmentLength - 2) >> 8);
+        out[o++] = (byte) (segmentLength - 2);
+        System.arraycopy(EXIF_HEADER, 0, out, o, EXIF_HEADER.length);
+        o += EXIF_HEADER.length;
+        System.arraycopy(tiff.buffer, 0, out, o, tiff.length);
+        o += tiff.length;
+        copyWithoutExif(targetJpeg, insertAt, targetJpeg.length, out, o);
+        return out;
+    }
+
+    /**
+     * Returns targetWebp with the EXIF of sourceJpeg (patched as for {@link #splice}) in an EXIF
+     * chunk. A simple (VP8/VP8L only) file is converted to the extended format, which carries
+     * metadata; width and height are the image's and become the canvas size.
+     */
+    static byte[] spliceWebp(byte[] targetWebp, byte[] sourceJpeg, int width, int height) throws IOException {
+        if (targetWebp == null || targetWebp.length < 20 || !hasPrefix(targetWebp, 0, RIFF) || !hasPrefix(targetWebp, 8, WEBP)) {
+            throw new IOException("Target is not a WebP");
+        }
+        Tiff tiff = sourceTiff(sourceJpeg, width, height);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(targetWebp.length + tiff.length + 32);
+        out.write(targetWebp, 0, 12); // RIFF size is fixed up below
+        boolean extended = hasPrefix(targetWebp, 12, VP8X);
+        if (!extended) {
+            // Lossless bitstreams say in their header whether alpha is used; lossy ones without
+            // an ALPH chunk (which needs VP8X already) have none
+            boolean alpha = hasPrefix(targetWebp, 12, VP8L) && targetWebp.length >= 25 && ((targetWebp[24] >> 4) & 1) != 0;
+            writeChunkHeader(out, VP8X, 10);
+            out.write(VP8X_FLAG_EXIF | (alpha ? VP8X_FLAG_ALPHA : 0));
+            out.write(new byte[3], 0, 3);
+            writeLe24(out, width - 1);
+            writeLe24(out, height - 1);
+        }
+        int pos = 12;
+        while (pos + 8 <= targetWebp.length) {
+            int size = le32(targetWebp, pos + 4);
+            int end = Math.min(targetWebp.length, pos + 8 + size + (size & 1));
+            if (size < 0 || pos + 8 + size > targetWebp.length) throw new IOException("Truncated WebP chunk");
+            if (hasPrefix(targetWebp, pos, VP8X)) {
+                out.write(targetWebp, pos, 8);
+                out.write(targetWebp[pos + 8] | VP8X_FLAG_EXIF);
+                out.write(targetWebp, pos + 9, end - pos - 9);
+            } else if (!hasPrefix(targetWebp, pos, WEBP_EXIF)) {
+                out.write(targetWebp, pos, end - pos);
+            }
+            pos = end;
+        }
+        // Metadata chunks follow the image data
+        writeChunkHeader(out, WEBP_EXIF, tiff.length);
+        out.write(tiff.buffer, 0, tiff.length);
+        if ((tiff.length & 1) != 0) out.write(0);
+
+        byte[] result = out.toByteArray();
+        int riffSize = result.length - 8;
+        result[4] = (byte) riffSize;
+        result[5] = (byte) (riffSize >> 8);
+        result[6] = (byte) (riffSize >> 16);
+        result[7] = (byte) (riffSize >> 24);
+        return result;
+    }
+
+    /** Returns targetPng with the EXIF of sourceJpeg (patched as for {@link #splice}) in an eXIf chunk after IHDR. */
+    static byte[] splicePng(byte[] targetPng, byte[] sourceJpeg, int width, int height) throws IOException {
+        if (targetPng == null || targetPng.length < 33 || !hasPrefix(targetPng, 0, PNG_SIGNATURE) || !hasPrefix(targetPng, 12, PNG_IHDR)) {
+            throw new IOException("Target is not a PNG");
+        }
+        Tiff tiff = sourceTiff(sourceJpeg, width, height);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(targetPng.length + tiff.length + 12);
+        int ihdrEnd = 8 + 12 + be32(targetPng, 8);
+        out.write(targetPng, 0, ihdrEnd);
+        writeBe32(out, tiff.length);
+        out.write(PNG_EXIF, 0, PNG_EXIF.length);
+        out.write(tiff.buffer, 0, tiff.length);
+        CRC32 crc = new CRC32();
+        crc.update(PNG_EXIF);
+        crc.update(tiff.buffer, 0, tiff.length);
+        writeBe32(out, (int) crc.getValue());
+        int pos = ihdrEnd;
+        while (pos + 12 <= targetPng.length) {
+            int end = pos + 12 + be32(targetPng, pos);
+            if (end > targetPng.length || end < pos) throw new IOException("Truncated PNG chunk");
+            if (!hasPrefix(targetPng, pos + 4, PNG_EXIF)) {
+                out.write(targetPng, pos, end - pos);
+            }
+            pos = end;
+        }
+        return out.toByteArray();
+    }
+
+    /** The EXIF of sourceJpeg (patched as for {@link #splice}) as an "Exif\0\0"-prefixed block, as HEIF stores it. */
+    static byte[] exifBlock(byte[] sourceJpeg, int width, int height) throws IOException {
+        Tiff tiff = sourceTiff(sourceJpeg, width, height);
+        byte[] block = new byte[EXIF_HEADER.length + tiff.length];
+        System.arraycopy(EXIF_HEADER, 0, block, 0, EXIF_HEADER.length);
+        System.arraycopy(tiff.buffer, 0, block, EXIF_HEADER.length, tiff.length);
+        return block;
+    }
+
+    // The source's TIFF block with orientation and dimensions patched, or a minimal one
+    private static Tiff sourceTiff(byte[] sourceJpeg, Integer finalWidth, Integer finalHeight) throws IOException {
+        Tiff tiff;
+        int[] sourceSegment = isJpeg(sourceJpeg) ? findExifSegment(sourceJpeg, 2) : null;
+        if (sourceSegment != null) {
+            int tiffStart = sourceSegment[0] + 4 + EXIF_HEADER.length;
+            tiff = new Tiff(sourceJpeg, tiffStart, sourceSegment[1] - tiffStart);
+        } else {
+            tiff = Tiff.empty();
+        }
+        tiff.patch(finalWidth, finalHeight);
+        return tiff;
+    }
+
+    private static void writeChunkHeader(ByteArrayOutputStream out, byte[] fourCc, int size) {
+        out.write(fourCc, 0, 4);
+        out.write(size);
+        out.write(size >> 8);
+        out.write(size >> 16);
+        out.write(size >> 24);
+    }
+
+    private static void writeLe24(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+    }
+
+    private static void writeBe32(ByteArrayOutputStream out, int value) {
+        out.write(value >> 24);
+        out.write(value >> 16);
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static int le32(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int be32(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    // Copies [from, to) of the JPEG, skipping EXIF APP1 segments that start in that range
+    private static int copyWithoutExif(byte[] jpeg, int from, int to, byte[] out, int o) {
+        int pos = from;
+        for (int[] s = findExifSegment(jpeg, 2); s != null; s = findExifSegment(jpeg, s[1])) {
+            if (s[0] < from || s[0] >= to) continue;
+            System.arraycopy(jpeg, pos, out, o, s[0] - pos);
+            o += s[0] - pos;
+            pos = s[1];
+        }
+        System.arraycopy(jpeg, pos, out, o, to - pos);
+        return o + to - pos;
+    }
+
+    private static boolean isJpeg(byte[] jpeg) {
+        return jpeg != null && jpeg.length >= 4 && (jpeg[0] & 0xFF) == 0xFF && (jpeg[1] & 0xFF) == 0xD8;
+    }
+
+    private static boolean hasPrefix(byte[] data, int offset, byte[] prefix) {
+        if (offset + prefix.length > data.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // {start, end, marker} of the header segment at pos, or null at SOS/EOI or on malformed data
+    private static int[] nextSegment(byte[] jpeg, int pos) {
+        if (pos + 4 > jpeg.length || (jpeg[pos] & 0xFF) != 0xFF) return null;
+        int start = pos;
+        while (pos < jpeg.length && (jpeg[pos] & 0xFF) == 0xFF) pos++;
+        if (pos + 3 > jpeg.length) return null;
+        int marker = jpeg[pos] & 0xFF;
+        if (marker == 0xDA || marker == 0xD9) return null;
+        int length = ((jpeg[pos + 1] & 0xFF) << 8) | (jpeg[pos + 2] & 0xFF);
+        int end = pos + 1 + length;
+        if (length < 2 || end > jpeg.length) return null;
+        return new int[] { start, end, marker };
+    }
+
+    // First EXIF APP1 segment at or after pos, as {start, end}
+    private static int[] findExifSegment(byte[] jpeg, int pos) {
+        for (int[] s = nextSegment(jpeg, pos); s != null; s = nextSegment(jpeg, s[1])) {
+            if (s[2] == 0xE1 && hasPrefix(jpeg, s[0] + 4, EXIF_HEADER)) return s;
+        }
+        return null;
+    }
+
+    /** Mutable copy of a TIFF block; offsets are relative to its header. */
+    private static final class Tiff {
+
+        byte[] buffer;
+        int length;
+        private final boolean littleEndian;
+
+        Tiff(byte[] source, int offset, int length) throws IOException {
+            if (length < 8) throw new IOException("Truncated EXIF");
+            // Room for two appended IFDs without reallocating
+            this.buffer = new byte[length + 128];
+            this.length = length;
+            System.arraycopy(source, offset, buffer, 0, length);
+            if (buffer[0] == 'I' && buffer[1] == 'I') littleEndian = true;
+            else if (buffer[0] == 'M' && buffer[1] == 'M') littleEndian = false;
+            else throw new IOException("Bad TIFF byte order");
+            if (u16(2) != 42) throw new IOException("Bad TIFF magic");
+            if (!isValidIfd(u32(4))) throw new IOException("Bad IFD0 offset");
+        }
+
+        // Big-endian header followed by an empty IFD0
+        static Tiff empty() throws IOException {
+            byte[] header = { 'M', 'M', 0, 42, 0, 0, 0, 8, 0, 0, 0, 0, 0, 0 };
+            return new Tiff(header, 0, header.length);
+        }
+
+        void patch(Integer finalWidth, Integer finalHeight) throws IOException {
+            int ifd0 = u32(4);
+            if (finalWidth != null || finalHeight != null) {
+                int[][] exifEntries = compact(
+                    finalWidth != null ? new int[] { TAG_PIXEL_X_DIMENSION, TYPE_SHORT, clampShort(finalWidth) } : null,
+                    finalHeight != null ? new int[] { TAG_PIXEL_Y_DIMENSION, TYPE_SHORT, clampShort(finalHeight) } : null
+                );
+                int exifIfd = valueOf(ifd0, TAG_EXIF_IFD);
+                exifIfd = isValidIfd(exifIfd) ? setEntries(exifIfd, exifEntries) : appendIfd(-1, exifEntries);
+                ifd0 = setEntries(ifd0, new int[][] { { TAG_EXIF_IFD, TYPE_LONG, exifIfd } });
+            }
+            int[][] rootEntries = compact(
+                new int[] { TAG_ORIENTATION, TYPE_SHORT, 1 },
+                finalWidth != null ? new int[] { TAG_IMAGE_WIDTH, TYPE_LONG, finalWidth } : null,
+                finalHeight != null ? new int[] { TAG_IMAGE_LENGTH, TYPE_LONG, finalHeight } : null
+            );
+            ifd0 = setEntries(ifd0, rootEntries);
+            put32(4, ifd0);
+        }
+
+        private boolean isValidIfd(int ifd) {
+            return ifd >= 8 && ifd + 2 <= length && ifd + 2 + 12 * u16(ifd) + 4 <= length;
+        }
+
+        // Inline value of a tag in the IFD, or -1 when absent
+        private int valueOf(int ifd, int tag) {
+            int entry = findEntry(ifd, tag);
+            if (entry < 0) return -1;
+            return u16(entry + 2) == TYPE_SHORT ? u16(entry + 8) : u32(entry + 8);
+        }
+
+        private int findEntry(int ifd, int tag) {
+            int count = u16(ifd);
+            for (int i = 0; i < count; i++) {
+                int entry = ifd + 2 + 12 * i;
+                if (u16(entry) == tag) return entry;
+            }
+            return -1;
+        }
+
+        /**
+         * Sets {tag, type, value} entries in the IFD. Existing entries are rewritten in place;
+         * otherwise the IFD is copied to the end with the new entries merged in, and the new
+         * offset is returned.
+         */
+        private int setEntries(int ifd, int[][] entries) throws IOException {
+            int missing = 0;
+            for (int[] e : entries) {
+                int entry = findEntry(ifd, e[0]);
+                if (entry >= 0) writeEntry(entry, e);
+                else missing++;
+            }
+            if (missing == 0) return ifd;
+            int[][] added = new int[missing][];
+            int n = 0;
+            for (int[] e : entries) {
+                if (findEntry(ifd, e[0]) < 0) added[n++] = e;
+            }
+            return appendIfd(ifd, added);
+        }
+
+        // Copies the IFD (or an empty one when ifd < 0) to the end of the block, merging in entries
+        private int appendIfd(int ifd, int[][] added) throws IOException {
+            int oldCount = ifd >= 0 ? u16(ifd) : 0;
+            int count = oldCount + added.length;
+            int offset = (length + 1) & ~1; // IFDs start on a word boundary
+            ensureCapacity(offset + 2 + 12 * count + 4);
+            length = offset + 2 + 12 * count + 4;
+            put16(offset, count);
+
+            // Entries stay sorted by tag: merge the old (sorted) entries with the added ones
+            int oldIndex = 0;
+            boolean[] used = new boolean[added.length];
+            for (int i = 0; i < count; i++) {
+                int entry = offset + 2 + 12 * i;
+                int nextAdded = -1;
+                for (int a = 0; a < added.length; a++) {
+                    if (!used[a] && (nextAdded < 0 || added[a][0] < added[nextAdded][0])) nextAdded = a;
+                }
+                int oldEntry = oldIndex < oldCount ? ifd + 2 + 12 * oldIndex : -1;
+                if (nextAdded >= 0 && (oldEntry < 0 || added[nextAdded][0] < u16(oldEntry))) {
+                    writeEntry(entry, added[nextAdded]);
+                    used[nextAdded] = true;
+                } else {
+                    System.arraycopy(buffer, oldEntry, buffer, entry, 12);
+                    oldIndex++;
+                }
+            }
+            put32(offset + 2 + 12 * count, ifd >= 0 ? u32(ifd + 2 + 12 * oldCount) : 0);
+            return offset;
+        }
+
+        private void writeEntry(int entry, int[] e) {
+            put16(entry, e[0]);
+            put16(entry + 2, e[1]);
+            put32(entry + 4, 1);
+            if (e[1] == TYPE_SHORT) {
+                put16(entry + 8, e[2]);
+                put16(entry + 10, 0);
+            } else {
+                put32(entry + 8, e[2]);
+            }
+        }
+
+        private void ensureCapacity(int capacity) throws IOException {
+            if (capacity > MAX_SEGMENT_PAYLOAD) throw new IOException("EXIF segment too large");
+            if (capacity <= buffer.length) return;
+            byte[] grown = new byte[capacity + 64];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+
+        private int u16(int offset) {
+            int a = buffer[offset] & 0xFF;
+            int b = buffer[offset + 1] & 0xFF;
+            return littleEndian ? (b << 8) | a : (a << 8) | b;
+        }
+
+        private int u32(int offset) {
+            return littleEndian ? u16(offset) | (u16(offset + 2) << 16) : (u16(offset) << 16) | u16(offset + 2);
+        }
+
+        private void put16(int offset, int value) {
+            int hi = (value >> 8) & 0xFF;
+            int lo = value & 0xFF;
+            buffer[offset] = (byte) (littleEndian ? lo : hi);
+            buffer[offset + 1] = (byte) (littleEndian ? hi : lo);
+        }
+
+        private void put32(int offset, int value) {
+            if (littleEndian) {
+                put16(offset, value & 0xFFFF);
+                put16(offset + 2, value >>> 16);
+            } else {
+                put16(offset, value >>> 16);
+                put16(offset + 2, value & 0xFFFF);
+            }
+        }
+    }
+
+    private static int[][] compact(int[]... entries) {
+        int count = 0;
+        for (int[] e : entries) {
+            if (e != null) count++;
+        }
+        int[][] result = new int[count][];
+        int n = 0;
+        for (int[] e : entries) {
+            if (e != null) result[n++] = e;
+        }
+        return result;
+    }
+
+    // EXIF dimension tags are written as SHORT, as before
+    private static int clampShort(int value) {
+        return Math.max(0, Math.min(value, 0xFFFF));
+    }
+}
@@ -0,0 +1,187 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Size-keyed pool of the buffers used by the analyzer hot path: output bitmaps, the ARGB pixel
+ * and column scratch arrays, the JPEG output buffer and the Base64 encode buffer. Once warmed up for a given
+ * sample size, a sample only allocates the final Base64 String handed to the bridge.
+ *
+ * Not thread-safe: it is owned by the analyzer thread.
+ */
+final class FrameBufferPool {
+
+    private static final int MAX_POOLED_BITMAPS = 4;
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(
+        StandardCharsets.US_ASCII
+    );
+
+    private final ArrayDeque<Bitmap> freeBitmaps = new ArrayDeque<>();
+    private final OutputBuffer outputBuffer = new OutputBuffer();
+    private int[] pixels = new int[0];
+    private int[] columns = new int[0];
+    private byte[] base64 = new byte[0];
+    private long allocations = 0;
+
+    /** Reusable JPEG output buffer that counts its own growth instead of silently doubling. */
+    final class OutputBuffer extends ByteArrayOutputStream {
+
+        OutputBuffer() {
+            super(0);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (buf.length < capacity) {
+                buf = Arrays.copyOf(buf, capacity);
+                allocations++;
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            ensureCapacity(grownCapacity(count + 1));
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            ensureCapacity(grownCapacity(count + len));
+            super.write(b, off, len);
+        }
+
+        void release() {
+            reset();
+            buf = new byte[0];
+        }
+
+        private int grownCapacity(int required) {
+            return required <= buf.length ? buf.length : Math.max(required, buf.length + (buf.length >> 1));
+        }
+    }
+
+    /** Returns a mutable ARGB_8888 bitmap of the given size, reusing a released one when possible. */
+    Bitmap acquireBitmap(int width, int height) {
+        for (Iterator<Bitmap> it = freeBitmaps.iterator(); it.hasNext(); ) {
+            Bitmap candidate = it.next();
+            if (candidate.isRecycled()) {
+                it.remove();
+                continue;
+            }
+            if (candidate.getWidth() == width && candidate.getHeight() == height) {
+                it.remove();
+                return candidate;
+            }
+        }
+        allocations++;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /** Hands a bitmap obtained from {@link #acquireBitmap} back to the pool. */
+    void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+        if (freeBitmaps.size() >= MAX_POOLED_BITMAPS) {
+            Bitmap evicted = freeBitmaps.pollFirst();
+            if (evicted != null) evicted.recycle();
+        }
+        freeBitmaps.addLast(bitmap);
+    }
+
+    /** Returns a scratch pixel array with at least {@code size} entries. */
+    int[] pixelBuffer(int size) {
+        if (pixels.length < size) {
+            pixels = new int[size];
+            allocations++;
+        }
+        return pixels;
+    }
+
+    /** Returns a scratch array with at least {@code size} entries for per-column offsets. */
+    int[] columnBuffer(int size) {
+        if (columns.length < size) {
+            columns = new int[size];
+            allocations++;
+        }
+        return columns;
+    }
+
+    /** Returns the reset output buffer, pre-sized to at least {@code expectedSize} bytes. */
+    OutputBuffer outputBuffer(int expectedSize) {
+        outputBuffer.reset();
+        outputBuffer.ensureCapacity(expectedSize);
+        return outputBuffer;
+    }
+
+    /** Writes an encoded image into the output buffer it is given. */
+    interface Encoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    /** Encodes into the pooled output buffer and returns its Base64, without copying the encoded bytes. */
+    String encodeToBase64(int expectedSize, Encoder encoder) throws IOException {
+        OutputBuffer out = outputBuffer(expectedSize);
+        encoder.encode(out);
+        return encodeBase64(out.buffer(), out.size());
+    }
+
+    /** Base64 (standard alphabet, padded, no line wraps) of the first {@code length} bytes of {@code src}. */
+    String encodeBase64(byte[] src, int length) {
+        int encodedLength = 4 * ((length + 2) / 3);
+        if (base64.length < encodedLength) {
+            base64 = new byte[encodedLength];
+            allocations++;
+        }
+        byte[] dst = base64;
+        int si = 0;
+        int di = 0;
+        int whole = length - length % 3;
+        while (si < whole) {
+            int bits = ((src[si++] & 0xFF) << 16) | ((src[si++] & 0xFF) << 8) | (src[si++] & 0xFF);
+            dst[di++] = BASE64_ALPHABET[(bits >>> 18) & 0x3F];
+            dst[di++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[di++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+            dst[di++] = BASE64_ALPHABET[bits & 0x3F];
+        }
+        int remaining = length - whole;
+        if (remaining > 0) {
+            int bits = (src[si] & 0xFF) << 16;
+            if (remaining == 2) bits |= (src[si + 1] & 0xFF) << 8;
+            dst[di++] = BASE64_ALPHABET[(bits >>> 18) & 0x3F];
+            dst[di++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+            dst[di++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3F] : (byte) '=';
+            dst[di++] = '=';
+        }
+        return new String(dst, 0, di, StandardCharsets.US_ASCII);
+    }
+
+    /** Number of buffers or bitmaps allocated so far; flat in steady state. */
+    long getAllocationCount() {
+        return allocations;
+    }
+
+    /** Drops every pooled buffer and recycles pooled bitmaps. */
+    void clear() {
+        for (Bitmap bitmap : freeBitmaps) {
+            if (!bitmap.isRecycled()) bitmap.recycle();
+        }
+        freeBitmaps.clear();
+        pixels = new int[0];
+        columns = new int[0];
+        base64 = new byte[0];
+        outputBuffer.release();
+    }
+}
@@ -0,0 +1,28 @@
+package app.capgo.capacitor.camera.preview;
+
+import androidx.camera.core.ImageProxy;
+import org.json.JSONObject;
+
+/**
+ * Native consumer of ImageAnalysis frames (code readers, quality scorers, ...).
+ *
+ * Processors run on the analyzer thread in registration order and see the frame before it is
+ * closed. They must not close the image or keep a reference to it after {@link #process} returns.
+ * Only the small JSON result crosses the bridge, as a {@code frameProcessorResult} event.
+ */
+public interface FrameProcessor {
+    /**
+     * Called once per frame the processor is scheduled for, right before {@link #process}.
+     * Returning false skips the frame at no cost, e.g. when the processor has no pending work.
+     */
+    default boolean wantsFrame() {
+        return true;
+    }
+
+    /**
+     * Processes one frame in YUV_420_888 format.
+     *
+     * @return a result to forward to JS, or null when there is nothing to report
+     */
+    JSONObject process(ImageProxy image) throws Exception;
+}
@@ -0,0 +1,249 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Saves captured images to the shared Pictures collection on one background thread.
+ *
+ * At most MAX_QUEUED images wait to be written; save() blocks the calling lane beyond that, which
+ * holds back the capture pipeline instead of piling up encoded images. On API 29+ each image is
+ * inserted into MediaStore as a pending item and written; pending items are published together
+ * with one batch update when the queue drains or MAX_BATCH items are waiting, so the gallery is
+ * notified once per batch. Older releases write to the public Pictures directory and scan the
+ * batch's files with a single MediaScanner call. Each batch is reported to the listener.
+ */
+final class GallerySaver {
+
+    private static final String TAG = "CameraPreview";
+    private static final int MAX_QUEUED = 4;
+    private static final int MAX_BATCH = 10;
+
+    interface Listener {
+        /** Called on the saver thread, once per batch, with results in save order. */
+        void onGallerySaveBatch(List<Result> results);
+    }
+
+    static final class Result {
+
+        final String captureId; // as passed to save()
+        final String uri; // content:// on API 29+, file:// before; null on failure
+        final String error;
+
+        Result(String captureId, String uri, String error) {
+            this.captureId = captureId;
+            this.uri = uri;
+            this.error = error;
+        }
+    }
+
+    private static final class Item {
+
+        final String captureId;
+        final Uri uri; // pending MediaStore item on API 29+
+        final File file; // written file before API 29
+        final String mimeType;
+        String error;
+
+        Item(String captureId, Uri uri, File file, String mimeType, String error) {
+            this.captureId = captureId;
+            this.uri = uri;
+            this.file = file;
+            this.mimeType = mimeType;
+            this.error = error;
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Semaphore slots = new Semaphore(MAX_QUEUED);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CameraPreview-gallery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Item> batch = new ArrayList<>(); // saver thread only
+
+    GallerySaver(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    /**
+     * Queues an encoded image; blocks while MAX_QUEUED images are already waiting. captureId is
+     * handed back in the image's Result.
+     */
+    void save(String captureId, byte[] data) {
+        slots.acquireUninterruptibly();
+        executor.execute(() -> {
+            try {
+                batch.add(write(captureId, data));
+            } finally {
+                slots.release();
+            }
+            // Nothing else queued: publish now rather than waiting for a full batch
+            if (batch.size() >= MAX_BATCH || slots.availablePermits() == MAX_QUEUED) {
+                flush();
+            }
+        });
+    }
+
+    private Item write(String captureId, byte[] data) {
+        String mimeType = mimeTypeOf(data);
+        String name = "IMG_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.US).format(new Date());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentResolver resolver = context.getContentResolver();
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, name + extensionOf(mimeType));
+            values.put(MediaStore.Images.Media.MIME_TYPE, mimeType);
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+            Uri uri = null;
+            try {
+                uri = resolver.insert(MediaStore.Images.Media.getContentUri(MediaStore.VOLUME_EXTERNAL_PRIMARY), values);
+                if (uri == null) throw new IOException("MediaStore insert failed");
+                try (OutputStream out = resolver.openOutputStream(uri)) {
+                    if (out == null) throw new IOException("Unable to open " + uri);
+                    out.write(data);
+                }
+                return new Item(captureId, uri, null, mimeType, null);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error saving image to gallery", e);
+                if (uri != null) resolver.delete(uri, null, null);
+                return new Item(captureId, null, null, mimeType, e.getMessage());
+            }
+        }
+        //noinspection deprecation
+        File dir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        File photo = new File(dir, name + extensionOf(mimeType));
+        for (int i = 1; photo.exists(); i++) {
+            photo = new File(dir, name + "_" + i + extensionOf(mimeType));
+        }
+        try (FileOutputStream fos = new FileOutputStream(photo)) {
+            fos.write(data);
+            return new Item(captureId, null, photo, mimeType, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving image to gallery", e);
+            //noinspection ResultOfMethodCallIgnored
+            photo.delete();
+            return new Item(captureId, null, null, mimeType, e.getMessage());
+        }
+    }
+
+    // Makes the batch visible in the gallery with a single notification, then reports it
+    private void flush() {
+        if (batch.isEmpty()) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            for (Item item : batch) {
+                if (item.uri == null) continue;
+                ops.add(ContentProviderOperation.newUpdate(item.uri).withValue(MediaStore.Images.Media.IS_PENDING, 0).build());
+            }
+            if (!ops.isEmpty()) {
+                try {
+                    context.getContentResolver().applyBatch(MediaStore.AUTHORITY, ops);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error publishing gallery images", e);
+                    for (Item item : batch) {
+                        if (item.uri == null) continue;
+                        context.getContentResolver().delete(item.uri, null, null);
+                        item.error = "Failed to publish image: " + e.getMessage();
+                    }
+                }
+            }
+        } else {
+            List<String> paths = new ArrayList<>();
+            List<String> mimeTypes = new ArrayList<>();
+            for (Item item : batch) {
+                if (item.file == null) continue;
+                paths.add(item.file.getAbsolutePath());
+                mimeTypes.add(item.mimeType);
+            }
+            if (!paths.isEmpty()) {
+                MediaScannerConnection.scanFile(
+                    context,
+                    paths.toArray(new String[0]),
+                    mimeTypes.toArray(new String[0]),
+                    null
+                );
+            }
+        }
+
+        List<Result> results = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            if (item.error != null) {
+                results.add(new Result(item.captureId, null, item.error));
+            } else {
+                String uri = item.uri != null ? item.uri.toString() : Uri.fromFile(item.file).toString();
+                results.add(new Result(item.captureId, uri, null));
+            }
+        }
+        batch.clear();
+        if (listener != null) listener.onGallerySaveBatch(results);
+    }
+
+    // Detect image format from byte array header
+    static String mimeTypeOf(byte[] data) {
+        if (data.length >= 12) {
+            // PNG signature (89 50 4E 47)
+            if (data[0] == (byte) 0x89 && data[1] == 0x50 && data[2] == 0x4E && data[3] == 0x47) {
+                return "image/png";
+            }
+            // WebP signature (RIFF ... WEBP)
+            if (
+                data[0] == 0x52 &&
+                data[1] == 0x49 &&
+                data[2] == 0x46 &&
+                data[3] == 0x46 &&
+                data[8] == 0x57 &&
+                data[9] == 0x45 &&
+                data[10] == 0x42 &&
+                data[11] == 0x50
+            ) {
+                return "image/webp";
+            }
+            // HEIF: ISO BMFF 'ftyp' box with an image brand
+            if (data[4] == 0x66 && data[5] == 0x74 && data[6] == 0x79 && data[7] == 0x70) {
+                String brand = new String(data, 8, 4, StandardCharsets.US_ASCII);
+                if (brand.equals("heic") || brand.equals("heix") || brand.equals("mif1")) {
+                    return "image/heic";
+                }
+            }
+        }
+        return "image/jpeg";
+    }
+
+    static String extensionOf(String mimeType) {
+        switch (mimeType) {
+            case "image/png":
+                return ".png";
+            case "image/webp":
+                return ".webp";
+            case "image/heic":
+                return ".heic";
+            default:
+                return ".jpg";
+        }
+    }
+}
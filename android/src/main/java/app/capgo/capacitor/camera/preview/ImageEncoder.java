@@ -0,0 +1,191 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.util.Log;
+import androidx.heifwriter.HeifWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Output formats of captures and samples. JPEG, PNG and WebP go through Bitmap.compress (lossy
+ * and lossless WebP have their own formats from API 30; on API 29 quality 100 selects the
+ * lossless encoder, and older releases have none). HEIF goes through HeifWriter, which needs
+ * API 28 and a hardware HEVC or HEIC encoder; it writes to a file, so the image passes through a
+ * temporary file in the cache dir. EXIF from the capture is carried into every container that
+ * holds it.
+ */
+final class ImageEncoder {
+
+    private static final String TAG = "CameraPreview ImageEncoder";
+
+    static final String JPEG = "jpeg";
+    static final String PNG = "png";
+    static final String WEBP = "webp";
+    static final String WEBP_LOSSLESS = "webp-lossless";
+    static final String HEIF = "heif";
+    static final List<String> FORMATS = Arrays.asList(JPEG, PNG, WEBP, WEBP_LOSSLESS, HEIF);
+
+    private static final long HEIF_TIMEOUT_MS = 10_000;
+    private static Boolean heifSupported; // probed once
+
+    private ImageEncoder() {}
+
+    /** Whether this device can encode the format. */
+    static boolean isSupported(String format) {
+        if (HEIF.equals(format)) return isHeifSupported();
+        if (WEBP_LOSSLESS.equals(format)) return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        return FORMATS.contains(format);
+    }
+
+    static List<String> supportedFormats() {
+        List<String> formats = new ArrayList<>();
+        for (String format : FORMATS) {
+            if (isSupported(format)) formats.add(format);
+        }
+        return formats;
+    }
+
+    /**
+     * Encodes the bitmap. When exifSource (the captured JPEG) is given, its EXIF is carried over,
+     * patched for an upright width x height image, except for JPEG output where callers splice
+     * EXIF in themselves. Quality is ignored by PNG and is the compression effort of lossless WebP.
+     */
+    static byte[] encode(Bitmap bitmap, String format, int quality, byte[] exifSource) throws IOException {
+        if (HEIF.equals(format)) {
+            return encodeHeif(bitmap, quality, exifSource);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compress(bitmap, format, quality, out);
+        byte[] encoded = out.toByteArray();
+        if (exifSource == null || JPEG.equals(format)) return encoded;
+        try {
+            return PNG.equals(format)
+                ? ExifSplicer.splicePng(encoded, exifSource, bitmap.getWidth(), bitmap.getHeight())
+                : ExifSplicer.spliceWebp(encoded, exifSource, bitmap.getWidth(), bitmap.getHeight());
+        } catch (IOException e) {
+            Log.w(TAG, "encode: could not carry EXIF into " + format, e);
+            return encoded;
+        }
+    }
+
+    /** Bitmap.compress for every format except HEIF. */
+    @SuppressWarnings("deprecation")
+    static void compress(Bitmap bitmap, String format, int quality, OutputStream out) throws IOException {
+        Bitmap.CompressFormat compressFormat;
+        switch (format) {
+            case PNG:
+                compressFormat = Bitmap.CompressFormat.PNG;
+                break;
+            case WEBP:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    compressFormat = Bitmap.CompressFormat.WEBP_LOSSY;
+                } else {
+                    // From API 29 the legacy format switches to lossless at 100
+                    compressFormat = Bitmap.CompressFormat.WEBP;
+                    quality = Math.min(quality, 99);
+                }
+                break;
+            case WEBP_LOSSLESS:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    compressFormat = Bitmap.CompressFormat.WEBP_LOSSLESS;
+                } else {
+                    compressFormat = Bitmap.CompressFormat.WEBP;
+                    quality = 100;
+                }
+                break;
+            case JPEG:
+                compressFormat = Bitmap.CompressFormat.JPEG;
+                break;
+            default:
+                throw new IOException("Unsupported format " + format);
+        }
+        if (!bitmap.compress(compressFormat, quality, out)) {
+            throw new IOException("Unable to encode " + format);
+        }
+    }
+
+    private static byte[] encodeHeif(Bitmap bitmap, int quality, byte[] exifSource) throws IOException {
+        if (!isHeifSupported()) throw new IOException("HEIF is not supported on this device");
+        byte[] exif = null;
+        if (exifSource != null) {
+            try {
+                exif = ExifSplicer.exifBlock(exifSource, bitmap.getWidth(), bitmap.getHeight());
+            } catch (IOException e) {
+                Log.w(TAG, "encodeHeif: could not carry EXIF", e);
+            }
+        }
+        File file = File.createTempFile("cpcp_heif_", ".heic"); // java.io.tmpdir is the app's cache dir
+        try {
+            HeifWriter writer = new HeifWriter.Builder(
+                file.getAbsolutePath(),
+                bitmap.getWidth(),
+                bitmap.getHeight(),
+                HeifWriter.INPUT_MODE_BITMAP
+            )
+                .setQuality(Math.max(0, Math.min(100, quality)))
+                .setMaxImages(1)
+                .build();
+            try {
+                writer.start();
+                writer.addBitmap(bitmap);
+                if (exif != null) {
+                    writer.addExifData(0, exif, 0, exif.length);
+                }
+                writer.stop(HEIF_TIMEOUT_MS);
+            } catch (Exception e) {
+                throw new IOException("Unable to encode HEIF: " + e.getMessage(), e);
+            } finally {
+                writer.close();
+            }
+            byte[] bytes = new byte[(int) file.length()];
+            try (FileInputStream in = new FileInputStream(file)) {
+                int read = 0;
+                while (read < bytes.length) {
+                    int n = in.read(bytes, read, bytes.length - read);
+                    if (n < 0) throw new IOException("HEIF file truncated");
+                    read += n;
+                }
+            }
+            return bytes;
+        } finally {
+            if (!file.delete()) file.deleteOnExit();
+        }
+    }
+
+    // HeifWriter uses the HEIC image encoder when there is one, otherwise the HEVC video encoder
+    private static synchronized boolean isHeifSupported() {
+        if (heifSupported == null) {
+            boolean supported = false;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                try {
+                    for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                        if (!info.isEncoder()) continue;
+                        for (String type : info.getSupportedTypes()) {
+                            if (
+                                MediaFormat.MIMETYPE_IMAGE_ANDROID_HEIC.equalsIgnoreCase(type) ||
+                                MediaFormat.MIMETYPE_VIDEO_HEVC.equalsIgnoreCase(type)
+                            ) {
+                                supported = true;
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "isHeifSupported: codec probe failed", e);
+                }
+            }
+            heifSupported = supported;
+            Log.d(TAG, "HEIF encoding " + (supported ? "supported" : "not supported"));
+        }
+        return heifSupported;
+    }
+}
@@ -0,0 +1,918 @@
+package app.capgo.capacitor.camera.preview;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Lossless crop and rotation of baseline JPEGs in the DCT domain (the jpegtran technique).
+ *
+ * The entropy-coded data is Huffman-decoded to quantized coefficients, blocks inside the crop are
+ * moved to their rotated position (transposing and sign-flipping coefficients as needed), and
+ * the result is Huffman-encoded again. No IDCT/DCT or requantization happens, so image quality
+ * is untouched and the cost is a fraction of a decode/encode round trip.
+ *
+ * The crop is snapped inward to whole MCUs; a partial MCU is only kept on an edge that stays at
+ * the right or bottom after rotation. Progressive, arithmetic-coded, 12-bit and multi-scan JPEGs
+ * are not handled: {@link #transform} returns null and callers fall back to the bitmap path.
+ * Pure Java with no Android dependencies.
+ */
+final class JpegLosslessTransform {
+
+    /** Transformed JPEG and its upright dimensions. */
+    static final class Result {
+
+        final byte[] jpeg;
+        final int width;
+        final int height;
+
+        Result(byte[] jpeg, int width, int height) {
+            this.jpeg = jpeg;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    // Zigzag index -> natural (row-major) index
+    static final int[] ZIGZAG = {
+        0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35,
+        42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // Standard Huffman tables (ITU T.81 Annex K.3): complete for 8-bit data, so any coefficient fits
+    private static final int[] DC_LUMA_BITS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int[] DC_LUMA_VALS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+    private static final int[] DC_CHROMA_BITS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+    private static final int[] DC_CHROMA_VALS = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+    private static final int[] AC_LUMA_BITS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+    private static final int[] AC_LUMA_VALS = {
+        0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07, 0x22, 0x71, 0x14, 0x32, 0x81,
+        0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0, 0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18,
+        0x19, 0x1a, 0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+        0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74, 0x75,
+        0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99,
+        0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+        0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2, 0xe3, 0xe4, 0xe5,
+        0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMA_BITS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+    private static final int[] AC_CHROMA_VALS = {
+        0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71, 0x13, 0x22, 0x32, 0x81, 0x08,
+        0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0, 0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25,
+        0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47,
+        0x48, 0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74,
+        0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97,
+        0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba,
+        0xc2, 0xc3, 0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe2, 0xe3, 0xe4,
+        0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8, 0xf9, 0xfa
+    };
+
+    private JpegLosslessTransform() {}
+
+    /**
+     * Crops the JPEG to the given rectangle (in upright coordinates, i.e. after rotation) and
+     * rotates it clockwise by rotationDegrees (0, 90, 180 or 270), losslessly.
+     *
+     * @return the transformed JPEG, or null when the input is not supported
+     */
+    static Result transform(byte[] jpeg, int rotationDegrees, int cropLeft, int cropTop, int cropRight, int cropBottom) {
+        try {
+            return new Transcoder(jpeg, rotationDegrees).run(cropLeft, cropTop, cropRight, cropBottom);
+        } catch (RuntimeException e) {
+            // Malformed or unsupported stream
+            return null;
+        }
+    }
+
+    /**
+     * Joins baseline JPEGs of consecutive horizontal strips of one image into a single JPEG. Each
+     * strip's coefficients are Huffman-decoded and re-encoded into one scan, so strips can be
+     * encoded separately and never need to be in memory as pixels together. Every strip must have
+     * the image's width, sampling and quantization tables; all but the last must be a whole number
+     * of MCU rows high. No metadata is written: callers splice EXIF in afterwards.
+     */
+    static final class StripJoiner {
+
+        private final int width;
+        private final int height;
+        private final ByteArrayOutputStream out;
+        private Transcoder first;
+        private BitWriter writer;
+        private HuffmanEncoder[] dcEncoders;
+        private HuffmanEncoder[] acEncoders;
+        private int[] predictors;
+        private int rows = 0;
+
+        StripJoiner(int width, int height, int expectedSize) {
+            this.width = width;
+            this.height = height;
+            this.out = new ByteArrayOutputStream(Math.max(1024, expectedSize));
+        }
+
+        /** Appends the next strip; returns false (and the joiner is unusable) when it does not fit. */
+        boolean append(byte[] stripJpeg) {
+            try {
+                Transcoder strip = new Transcoder(stripJpeg, 0);
+                int scanData = strip.parse();
+                if (scanData < 0 || strip.width != width || rows + strip.height > height) return false;
+                if (first == null) {
+                    start(strip);
+                } else if (!sameLayout(first, strip) || rows % first.mcuHeight() != 0) {
+                    return false;
+                }
+                recode(strip, scanData);
+                rows += strip.height;
+                return true;
+            } catch (RuntimeException e) {
+                // Malformed or unsupported strip
+                return false;
+            }
+        }
+
+        /** Bytes written so far. */
+        int size() {
+            return out.size();
+        }
+
+        /** The joined JPEG, or null when fewer rows than the image height were appended. */
+        byte[] finish() {
+            if (first == null || rows != height) return null;
+            writer.flush();
+            out.write(0xFF);
+            out.write(0xD9);
+            return out.toByteArray();
+        }
+
+        private void start(Transcoder strip) {
+            first = strip;
+            out.write(0xFF);
+            out.write(0xD8);
+            strip.writeFrameHeaders(out, width, height);
+            writer = new BitWriter(out);
+            int count = strip.components.length;
+            dcEncoders = new HuffmanEncoder[count];
+            acEncoders = new HuffmanEncoder[count];
+            for (int ci = 0; ci < count; ci++) {
+                dcEncoders[ci] = ci == 0 ? new HuffmanEncoder(DC_LUMA_BITS, DC_LUMA_VALS) : new HuffmanEncoder(DC_CHROMA_BITS, DC_CHROMA_VALS);
+                acEncoders[ci] = ci == 0 ? new HuffmanEncoder(AC_LUMA_BITS, AC_LUMA_VALS) : new HuffmanEncoder(AC_CHROMA_BITS, AC_CHROMA_VALS);
+            }
+            predictors = new int[count];
+        }
+
+        private static boolean sameLayout(Transcoder a, Transcoder b) {
+            if (a.sofMarker != b.sofMarker || a.components.length != b.components.length) return false;
+            for (int i = 0; i < a.components.length; i++) {
+                Component ca = a.components[i];
+                Component cb = b.components[i];
+                if (ca.id != cb.id || ca.h != cb.h || ca.v != cb.v || ca.tq != cb.tq) return false;
+                if (!Arrays.equals(a.quantTables[ca.tq], b.quantTables[cb.tq])) return false;
+                if (a.quantPrecision[ca.tq] != b.quantPrecision[cb.tq]) return false;
+            }
+            return true;
+        }
+
+        // Decodes the strip's scan block by block and encodes each block straight into the output,
+        // continuing the output's DC predictors across strips
+        private void recode(Transcoder strip, int scanData) {
+            Component[] components = strip.components;
+            int mcusX = (strip.width + strip.mcuWidth() - 1) / strip.mcuWidth();
+            int mcusY = (strip.height + strip.mcuHeight() - 1) / strip.mcuHeight();
+            BitReader reader = new BitReader(strip.data, scanData);
+            int[] decodePredictors = new int[components.length];
+            int[] block = new int[64];
+            short[] coefficients = new short[64];
+            int mcu = 0;
+            for (int my = 0; my < mcusY; my++) {
+                for (int mx = 0; mx < mcusX; mx++) {
+                    if (strip.restartInterval > 0 && mcu > 0 && mcu % strip.restartInterval == 0) {
+                        reader.restart();
+                        Arrays.fill(decodePredictors, 0);
+                    }
+                    for (int ci = 0; ci < components.length; ci++) {
+                        Component c = components[ci];
+                        HuffmanDecoder dc = strip.dcTables[c.td];
+                        HuffmanDecoder ac = strip.acTables[c.ta];
+                        for (int b = 0; b < c.h * c.v; b++) {
+                            decodePredictors[ci] = Transcoder.decodeBlock(reader, dc, ac, decodePredictors[ci], block);
+                            for (int i = 0; i < 64; i++) coefficients[i] = (short) block[i];
+                            predictors[ci] = Transcoder.encodeBlock(writer, dcEncoders[ci], acEncoders[ci], coefficients, 0, predictors[ci]);
+                        }
+                    }
+                    mcu++;
+                }
+            }
+        }
+    }
+
+    private static final class Component {
+
+        int id;
+        int h;
+        int v;
+        int tq;
+        int td;
+        int ta;
+        // Cropped, rotated coefficient blocks in natural order: outBlocksW x outBlocksH x 64
+        short[] blocks;
+        int outBlocksW;
+        int outBlocksH;
+    }
+
+    private static final class Transcoder {
+
+        private final byte[] data;
+        private final int rotation;
+        private final ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        private final int[][] quantTables = new int[4][];
+        private final int[] quantPrecision = new int[4];
+        private final HuffmanDecoder[] dcTables = new HuffmanDecoder[4];
+        private final HuffmanDecoder[] acTables = new HuffmanDecoder[4];
+        private int sofMarker = -1;
+        private int width;
+        private int height;
+        private Component[] components;
+        private int restartInterval = 0;
+
+        Transcoder(byte[] data, int rotationDegrees) {
+            this.data = data;
+            this.rotation = ((rotationDegrees % 360) + 360) % 360;
+            if (rotation % 90 != 0) throw new IllegalArgumentException("rotation");
+        }
+
+        Result run(int cropLeft, int cropTop, int cropRight, int cropBottom) {
+            int scanData = parse();
+            if (scanData < 0) return null;
+            return transcode(scanData, cropLeft, cropTop, cropRight, cropBottom);
+        }
+
+        // Reads the headers up to the scan; returns the offset of the entropy-coded data, or -1
+        // for streams we do not handle
+        int parse() {
+            if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) return -1;
+            int pos = 2;
+            while (true) {
+                // Skip fill bytes before the marker
+                if ((data[pos] & 0xFF) != 0xFF) return -1;
+                while ((data[pos] & 0xFF) == 0xFF) pos++;
+                int marker = data[pos++] & 0xFF;
+                if (marker == 0xD9) return -1; // EOI before any scan
+                int length = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+                int segment = pos + 2;
+                int next = pos + length;
+                if (marker == 0xC0 || marker == 0xC1) {
+                    if (sofMarker != -1) return -1;
+                    sofMarker = marker;
+                    parseFrame(segment);
+                } else if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    return -1; // progressive, lossless or arithmetic coding
+                } else if (marker == 0xCC) {
+                    return -1; // arithmetic conditioning
+                } else if (marker == 0xC4) {
+                    parseHuffmanTables(segment, next);
+                } else if (marker == 0xDB) {
+                    parseQuantTables(segment, next);
+                } else if (marker == 0xDD) {
+                    restartInterval = ((data[segment] & 0xFF) << 8) | (data[segment + 1] & 0xFF);
+                } else if ((marker >= 0xE0 && marker <= 0xEF) || marker == 0xFE) {
+                    if (!isMpfSegment(marker, segment, next)) {
+                        // APPn / COM (EXIF, JFIF, ICC, ...) are carried over as they are
+                        headers.write(data, pos - 2, length + 2);
+                    }
+                } else if (marker == 0xDA) {
+                    if (sofMarker == -1) return -1;
+                    return parseScanHeader(segment);
+                } else {
+                    return -1;
+                }
+                pos = next;
+            }
+        }
+
+        // Multi-picture (MPF) offsets would point into the old stream, so that segment is dropped
+        private boolean isMpfSegment(int marker, int segment, int end) {
+            return (
+                marker == 0xE2 &&
+                end - segment >= 4 &&
+                data[segment] == 'M' &&
+                data[segment + 1] == 'P' &&
+                data[segment + 2] == 'F' &&
+                data[segment + 3] == 0
+            );
+        }
+
+        private void parseFrame(int p) {
+            if ((data[p] & 0xFF) != 8) throw new IllegalStateException("precision");
+            height = ((data[p + 1] & 0xFF) << 8) | (data[p + 2] & 0xFF);
+            width = ((data[p + 3] & 0xFF) << 8) | (data[p + 4] & 0xFF);
+            int count = data[p + 5] & 0xFF;
+            if (width == 0 || height == 0 || count == 0 || count > 4) throw new IllegalStateException("frame");
+            components = new Component[count];
+            p += 6;
+            for (int i = 0; i < count; i++) {
+                Component c = new Component();
+                c.id = data[p] & 0xFF;
+                c.h = (data[p + 1] >> 4) & 0x0F;
+                c.v = data[p + 1] & 0x0F;
+                c.tq = data[p + 2] & 0x0F;
+                if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4 || c.tq > 3) throw new IllegalStateException("component");
+                if (count == 1) {
+                    // A single-component scan is non-interleaved: its MCU is one block
+                    c.h = 1;
+                    c.v = 1;
+                }
+                components[i] = c;
+                p += 3;
+            }
+        }
+
+        private void parseQuantTables(int p, int end) {
+            while (p < end) {
+                int pq = (data[p] >> 4) & 0x0F;
+                int tq = data[p] & 0x0F;
+                p++;
+                if (tq > 3 || pq > 1) throw new IllegalStateException("dqt");
+                int[] table = new int[64];
+                for (int i = 0; i < 64; i++) {
+                    if (pq == 0) {
+                        table[i] = data[p++] & 0xFF;
+                    } else {
+                        table[i] = ((data[p] & 0xFF) << 8) | (data[p + 1] & 0xFF);
+                        p += 2;
+                    }
+                }
+                quantTables[tq] = table;
+                quantPrecision[tq] = pq;
+            }
+        }
+
+        private void parseHuffmanTables(int p, int end) {
+            while (p < end) {
+                int tc = (data[p] >> 4) & 0x0F;
+                int th = data[p] & 0x0F;
+                p++;
+                if (tc > 1 || th > 3) throw new IllegalStateException("dht");
+                int[] bits = new int[16];
+                int total = 0;
+                for (int i = 0; i < 16; i++) {
+                    bits[i] = data[p + i] & 0xFF;
+                    total += bits[i];
+                }
+                p += 16;
+                int[] vals = new int[total];
+                for (int i = 0; i < total; i++) vals[i] = data[p + i] & 0xFF;
+                p += total;
+                HuffmanDecoder decoder = new HuffmanDecoder(bits, vals);
+                if (tc == 0) dcTables[th] = decoder;
+                else acTables[th] = decoder;
+            }
+        }
+
+        // Returns the offset of the entropy-coded data, or -1 for scans we do not handle
+        private int parseScanHeader(int p) {
+            int count = data[p] & 0xFF;
+            if (count != components.length) return -1; // only a single scan covering every component
+            p++;
+            for (int i = 0; i < count; i++) {
+                int id = data[p] & 0xFF;
+                Component c = components[i];
+                if (c.id != id) return -1; // scan order must match frame order
+                c.td = (data[p + 1] >> 4) & 0x0F;
+                c.ta = data[p + 1] & 0x0F;
+                if (c.td > 3 || c.ta > 3 || dcTables[c.td] == null || acTables[c.ta] == null) return -1;
+                if (quantTables[c.tq] == null) return -1;
+                p += 2;
+            }
+            int ss = data[p] & 0xFF;
+            int se = data[p + 1] & 0xFF;
+            int ahal = data[p + 2] & 0xFF;
+            if (ss != 0 || se != 63 || ahal != 0) return -1;
+            return p + 3;
+        }
+
+        int mcuWidth() {
+            int hMax = 1;
+            for (Component c : components) hMax = Math.max(hMax, c.h);
+            return 8 * hMax;
+        }
+
+        int mcuHeight() {
+            int vMax = 1;
+            for (Component c : components) vMax = Math.max(vMax, c.v);
+            return 8 * vMax;
+        }
+
+        private Result transcode(int scanData, int cropLeft, int cropTop, int cropRight, int cropBottom) {
+            int mcuW = mcuWidth();
+            int mcuH = mcuHeight();
+            int mcusX = (width + mcuW - 1) / mcuW;
+            int mcusY = (height + mcuH - 1) / mcuH;
+            boolean swap = rotation == 90 || rotation == 270;
+
+            // Crop rectangle in the encoded (source) orientation
+            int uprightW = swap ? height : width;
+            int uprightH = swap ? width : height;
+            int l = clamp(cropLeft, 0, uprightW);
+            int t = clamp(cropTop, 0, uprightH);
+            int r = clamp(cropRight, 0, uprightW);
+            int b = clamp(cropBottom, 0, uprightH);
+            int sl;
+            int st;
+            int sr;
+            int sb;
+            switch (rotation) {
+                case 90:
+                    sl = t;
+                    st = height - r;
+                    sr = b;
+                    sb = height - l;
+                    break;
+                case 180:
+                    sl = width - r;
+                    st = height - b;
+                    sr = width - l;
+                    sb = height - t;
+                    break;
+                case 270:
+                    sl = width - b;
+                    st = l;
+                    sr = width - t;
+                    sb = r;
+                    break;
+                default:
+                    sl = l;
+                    st = t;
+                    sr = r;
+                    sb = b;
+            }
+
+            // Snap inward to whole MCUs. A partial MCU can only survive on an edge that ends up at
+            // the right or bottom of the output, where the JPEG grid pads anyway.
+            boolean keepPartialRight = rotation == 0 || rotation == 90;
+            boolean keepPartialBottom = rotation == 0 || rotation == 270;
+            int mx0 = (sl + mcuW - 1) / mcuW;
+            int my0 = (st + mcuH - 1) / mcuH;
+            int mx1 = keepPartialRight && sr >= width ? mcusX : sr / mcuW;
+            int my1 = keepPartialBottom && sb >= height ? mcusY : sb / mcuH;
+            if (mx1 <= mx0 || my1 <= my0) return null;
+            int srcOutW = Math.min(width, mx1 * mcuW) - mx0 * mcuW;
+            int srcOutH = Math.min(height, my1 * mcuH) - my0 * mcuH;
+
+            for (Component c : components) {
+                int cropBlocksW = (mx1 - mx0) * c.h;
+                int cropBlocksH = (my1 - my0) * c.v;
+                c.outBlocksW = swap ? cropBlocksH : cropBlocksW;
+                c.outBlocksH = swap ? cropBlocksW : cropBlocksH;
+                c.blocks = new short[c.outBlocksW * c.outBlocksH * 64];
+            }
+
+            decodeScan(scanData, mcusX, mx0, my0, mx1, my1);
+
+            int outW = swap ? srcOutH : srcOutW;
+            int outH = swap ? srcOutW : srcOutH;
+            return new Result(encode(outW, outH), outW, outH);
+        }
+
+        private void decodeScan(int scanData, int mcusX, int mx0, int my0, int mx1, int my1) {
+            BitReader reader = new BitReader(data, scanData);
+            int[] predictors = new int[components.length];
+            int[] block = new int[64];
+            int mcu = 0;
+            for (int my = 0; my < my1; my++) {
+                boolean rowInside = my >= my0;
+                for (int mx = 0; mx < mcusX; mx++) {
+                    if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                        reader.restart();
+                        Arrays.fill(predictors, 0);
+                    }
+                    boolean inside = rowInside && mx >= mx0 && mx < mx1;
+                    for (int ci = 0; ci < components.length; ci++) {
+                        Component c = components[ci];
+                        HuffmanDecoder dc = dcTables[c.td];
+                        HuffmanDecoder ac = acTables[c.ta];
+                        for (int by = 0; by < c.v; by++) {
+                            for (int bx = 0; bx < c.h; bx++) {
+                                predictors[ci] = decodeBlock(reader, dc, ac, predictors[ci], block);
+                                if (inside) {
+                                    place(c, (mx - mx0) * c.h + bx, (my - my0) * c.v + by, block);
+                                }
+                            }
+                        }
+                    }
+                    mcu++;
+                }
+            }
+        }
+
+        // Decodes one block into natural order; returns the new DC predictor
+        private static int decodeBlock(BitReader reader, HuffmanDecoder dc, HuffmanDecoder ac, int predictor, int[] block) {
+            Arrays.fill(block, 0);
+            int s = dc.decode(reader);
+            int dcValue = predictor + (s == 0 ? 0 : extend(reader.bits(s), s));
+            block[0] = dcValue;
+            for (int k = 1; k < 64; ) {
+                int rs = ac.decode(reader);
+                int run = rs >> 4;
+                int size = rs & 0x0F;
+                if (size == 0) {
+                    if (run != 15) break; // EOB
+                    k += 16; // ZRL
+                    continue;
+                }
+                k += run;
+                if (k > 63) throw new IllegalStateException("ac overflow");
+                block[ZIGZAG[k]] = extend(reader.bits(size), size);
+                k++;
+            }
+            return dcValue;
+        }
+
+        // Stores a source block at its rotated position, transforming the coefficients accordingly
+        private void place(Component c, int sx, int sy, int[] in) {
+            boolean swap = rotation == 90 || rotation == 270;
+            int cropW = swap ? c.outBlocksH : c.outBlocksW;
+            int cropH = swap ? c.outBlocksW : c.outBlocksH;
+            int ox;
+            int oy;
+            switch (rotation) {
+                case 90:
+                    ox = cropH - 1 - sy;
+                    oy = sx;
+                    break;
+                case 180:
+                    ox = cropW - 1 - sx;
+                    oy = cropH - 1 - sy;
+                    break;
+                case 270:
+                    ox = sy;
+                    oy = cropW - 1 - sx;
+                    break;
+                default:
+                    ox = sx;
+                    oy = sy;
+            }
+            short[] out = c.blocks;
+            int base = (oy * c.outBlocksW + ox) * 64;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    int value;
+                    switch (rotation) {
+                        case 90: // transpose, then mirror horizontally
+                            value = in[col * 8 + row];
+                            if ((col & 1) != 0) value = -value;
+                            break;
+                        case 180: // mirror both ways
+                            value = in[row * 8 + col];
+                            if (((row + col) & 1) != 0) value = -value;
+                            break;
+                        case 270: // transpose, then mirror vertically
+                            value = in[col * 8 + row];
+                            if ((row & 1) != 0) value = -value;
+                            break;
+                        default:
+                            value = in[row * 8 + col];
+                    }
+                    out[base + row * 8 + col] = (short) value;
+                }
+            }
+        }
+
+        private byte[] encode(int outW, int outH) {
+            boolean swap = rotation == 90 || rotation == 270;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            out.write(0xFF);
+            out.write(0xD8);
+            byte[] carried = headers.toByteArray();
+            out.write(carried, 0, carried.length);
+            writeFrameHeaders(out, outW, outH);
+
+            HuffmanEncoder dcLuma = new HuffmanEncoder(DC_LUMA_BITS, DC_LUMA_VALS);
+            HuffmanEncoder acLuma = new HuffmanEncoder(AC_LUMA_BITS, AC_LUMA_VALS);
+            HuffmanEncoder dcChroma = new HuffmanEncoder(DC_CHROMA_BITS, DC_CHROMA_VALS);
+            HuffmanEncoder acChroma = new HuffmanEncoder(AC_CHROMA_BITS, AC_CHROMA_VALS);
+            BitWriter writer = new BitWriter(out);
+            int[] predictors = new int[components.length];
+            Component first = components[0];
+            int outH0 = swap ? first.h : first.v;
+            int outW0 = swap ? first.v : first.h;
+            int mcusX = first.outBlocksW / outW0;
+            int mcusY = first.outBlocksH / outH0;
+            for (int my = 0; my < mcusY; my++) {
+                for (int mx = 0; mx < mcusX; mx++) {
+                    for (int ci = 0; ci < components.length; ci++) {
+                        Component c = components[ci];
+                        int h = swap ? c.v : c.h;
+                        int v = swap ? c.h : c.v;
+                        HuffmanEncoder dc = ci == 0 ? dcLuma : dcChroma;
+                        HuffmanEncoder ac = ci == 0 ? acLuma : acChroma;
+                        for (int by = 0; by < v; by++) {
+                            for (int bx = 0; bx < h; bx++) {
+                                int offset = ((my * v + by) * c.outBlocksW + mx * h + bx) * 64;
+                                predictors[ci] = encodeBlock(writer, dc, ac, c.blocks, offset, predictors[ci]);
+                            }
+                        }
+                    }
+                }
+            }
+            writer.flush();
+            out.write(0xFF);
+            out.write(0xD9);
+            return out.toByteArray();
+        }
+
+        // DQT, SOF, DHT and SOS for an outW x outH image in this stream's (rotated) layout
+        private void writeFrameHeaders(ByteArrayOutputStream out, int outW, int outH) {
+            boolean swap = rotation == 90 || rotation == 270;
+
+            // DQT: transposed along with the coefficients when rotating by 90/270
+            for (int tq = 0; tq < 4; tq++) {
+                int[] table = quantTables[tq];
+                if (table == null) continue;
+                int pq = quantPrecision[tq];
+                writeMarker(out, 0xDB, 1 + 64 * (pq + 1));
+                out.write((pq << 4) | tq);
+                for (int i = 0; i < 64; i++) {
+                    int value = swap ? table[zigzagIndexOf(transposeNatural(ZIGZAG[i]))] : table[i];
+                    if (pq == 1) out.write(value >> 8);
+                    out.write(value & 0xFF);
+                }
+            }
+
+            // SOF: new size, sampling factors swapped when rotating by 90/270
+            writeMarker(out, sofMarker, 6 + 3 * components.length);
+            out.write(8);
+            out.write(outH >> 8);
+            out.write(outH & 0xFF);
+            out.write(outW >> 8);
+            out.write(outW & 0xFF);
+            out.write(components.length);
+            for (Component c : components) {
+                int h = swap ? c.v : c.h;
+                int v = swap ? c.h : c.v;
+                out.write(c.id);
+                out.write((h << 4) | v);
+                out.write(c.tq);
+            }
+
+            // DHT: standard tables, table 0 for the first component and table 1 for the others
+            writeHuffmanTable(out, 0x00, DC_LUMA_BITS, DC_LUMA_VALS);
+            writeHuffmanTable(out, 0x10, AC_LUMA_BITS, AC_LUMA_VALS);
+            if (components.length > 1) {
+                writeHuffmanTable(out, 0x01, DC_CHROMA_BITS, DC_CHROMA_VALS);
+                writeHuffmanTable(out, 0x11, AC_CHROMA_BITS, AC_CHROMA_VALS);
+            }
+
+            // SOS
+            writeMarker(out, 0xDA, 4 + 2 * components.length);
+            out.write(components.length);
+            for (int i = 0; i < components.length; i++) {
+                int table = i == 0 ? 0 : 1;
+                out.write(components[i].id);
+                out.write((table << 4) | table);
+            }
+            out.write(0);
+            out.write(63);
+            out.write(0);
+        }
+
+        private static int encodeBlock(BitWriter writer, HuffmanEncoder dc, HuffmanEncoder ac, short[] blocks, int offset, int predictor) {
+            int dcValue = blocks[offset];
+            int diff = dcValue - predictor;
+            int size = magnitudeBits(diff);
+            dc.write(writer, size);
+            if (size > 0) writer.write(diff < 0 ? diff - 1 : diff, size);
+
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = blocks[offset + ZIGZAG[k]];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    ac.write(writer, 0xF0); // ZRL
+                    run -= 16;
+                }
+                size = magnitudeBits(value);
+                ac.write(writer, (run << 4) | size);
+                writer.write(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) ac.write(writer, 0x00); // EOB
+            return dcValue;
+        }
+
+        private static void writeMarker(ByteArrayOutputStream out, int marker, int payloadLength) {
+            out.write(0xFF);
+            out.write(marker);
+            out.write((payloadLength + 2) >> 8);
+            out.write((payloadLength + 2) & 0xFF);
+        }
+
+        private static void writeHuffmanTable(ByteArrayOutputStream out, int classAndId, int[] bits, int[] vals) {
+            writeMarker(out, 0xC4, 17 + vals.length);
+            out.write(classAndId);
+            for (int b : bits) out.write(b);
+            for (int v : vals) out.write(v);
+        }
+    }
+
+    static int transposeNatural(int natural) {
+        return (natural & 7) * 8 + (natural >> 3);
+    }
+
+    static int zigzagIndexOf(int natural) {
+        for (int i = 0; i < 64; i++) {
+            if (ZIGZAG[i] == natural) return i;
+        }
+        throw new IllegalArgumentException("natural index");
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int magnitudeBits(int value) {
+        return value == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private static int extend(int bits, int size) {
+        return bits < (1 << (size - 1)) ? bits - (1 << size) + 1 : bits;
+    }
+
+    /** MSB-first reader over entropy-coded data: removes stuffed zero bytes and stops at markers. */
+    private static final class BitReader {
+
+        private final byte[] data;
+        private int pos;
+        private int buffer = 0;
+        private int count = 0;
+        private boolean atMarker = false;
+
+        BitReader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        private void fill() {
+            while (count <= 24) {
+                int b = 0;
+                if (!atMarker && pos < data.length) {
+                    b = data[pos] & 0xFF;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < data.length ? data[pos + 1] & 0xFF : 0xD9;
+                        if (next == 0x00) {
+                            pos += 2;
+                        } else {
+                            atMarker = true; // marker reached: feed zeros from here on
+                            b = 0;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                buffer |= b << (24 - count);
+                count += 8;
+            }
+        }
+
+        int peek(int n) {
+            if (count < n) fill();
+            return buffer >>> (32 - n);
+        }
+
+        void skip(int n) {
+            buffer <<= n;
+            count -= n;
+        }
+
+        int bits(int n) {
+            int value = peek(n);
+            skip(n);
+            return value;
+        }
+
+        // Discards the remaining bits of the interval and consumes the RSTn marker
+        void restart() {
+            buffer = 0;
+            count = 0;
+            atMarker = false;
+            while (pos + 1 < data.length) {
+                if ((data[pos] & 0xFF) == 0xFF) {
+                    int marker = data[pos + 1] & 0xFF;
+                    if (marker >= 0xD0 && marker <= 0xD7) {
+                        pos += 2;
+                        return;
+                    }
+                    if (marker != 0xFF && marker != 0x00) {
+                        throw new IllegalStateException("missing restart marker");
+                    }
+                }
+                pos++;
+            }
+            throw new IllegalStateException("missing restart marker");
+        }
+    }
+
+    /** Canonical Huffman decoder with a 9-bit lookahead table (ITU T.81 Annex F.2.2.3 otherwise). */
+    private static final class HuffmanDecoder {
+
+        private static final int LOOKAHEAD = 9;
+        private final int[] lookup = new int[1 << LOOKAHEAD]; // (length << 8) | value, 0 if longer
+        private final int[] maxCode = new int[18];
+        private final int[] valPtr = new int[17];
+        private final int[] minCode = new int[17];
+        private final int[] vals;
+
+        HuffmanDecoder(int[] bits, int[] vals) {
+            this.vals = vals;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                valPtr[length] = k;
+                minCode[length] = code;
+                int n = bits[length - 1];
+                for (int i = 0; i < n; i++) {
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        int start = code << shift;
+                        for (int j = 0; j < (1 << shift); j++) {
+                            lookup[start + j] = (length << 8) | vals[k];
+                        }
+                    }
+                    code++;
+                    k++;
+                }
+                maxCode[length] = n > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        int decode(BitReader reader) {
+            int entry = lookup[reader.peek(LOOKAHEAD)];
+            if (entry != 0) {
+                reader.skip(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = LOOKAHEAD + 1; length <= 16; length++) {
+                int code = reader.peek(length);
+                if (maxCode[length] >= 0 && code <= maxCode[length]) {
+                    reader.skip(length);
+                    return vals[valPtr[length] + code - minCode[length]];
+                }
+            }
+            throw new IllegalStateException("bad huffman code");
+        }
+    }
+
+    private static final class HuffmanEncoder {
+
+        private final int[] codes = new int[256];
+        private final int[] lengths = new int[256];
+
+        HuffmanEncoder(int[] bits, int[] vals) {
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    codes[vals[k]] = code++;
+                    lengths[vals[k]] = length;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+
+        void write(BitWriter writer, int symbol) {
+            if (lengths[symbol] == 0) throw new IllegalStateException("symbol without code");
+            writer.write(codes[symbol], lengths[symbol]);
+        }
+    }
+
+    /** MSB-first writer that byte-stuffs 0xFF. */
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream out;
+        private int buffer = 0;
+        private int count = 0;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(int bits, int length) {
+            buffer = (buffer << length) | (bits & ((1 << length) - 1));
+            count += length;
+            while (count >= 8) {
+                int b = (buffer >> (count - 8)) & 0xFF;
+                out.write(b);
+                if (b == 0xFF) out.write(0);
+                count -= 8;
+            }
+            buffer &= (1 << count) - 1;
+        }
+
+        void flush() {
+            if (count > 0) write(0x7F, 8 - count); // pad with 1-bits
+        }
+    }
+}
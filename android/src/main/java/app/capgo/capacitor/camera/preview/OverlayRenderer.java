@@ -0,0 +1,272 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.Log;
+import androidx.exifinterface.media.ExifInterface;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Draws the timestamp and location pills and the optional watermark onto captured bitmaps.
+ *
+ * One renderer lives as long as its camera view. The typeface, paints and date formats are set up
+ * once; each pill is rendered once into a small bitmap for the current font size and reused while
+ * its label is unchanged, and the watermark is scaled once per capture width. Drawing a capture is
+ * then a few bitmap blits into the pill and watermark rectangles, leaving the rest of the image
+ * untouched, so it can be repeated per strip of a tiled encode.
+ */
+final class OverlayRenderer {
+
+    private static final String TAG = "CameraPreview";
+
+    // Visual constants (match the iOS timestamp style)
+    private static final float FONT_RATIO = 0.035f; // ~3.5% of width
+    private static final float PADDING_H = 16f; // horizontal inner padding
+    private static final float PADDING_V = 10f; // vertical inner padding
+    private static final float MARGIN = 12f; // margin from image edges
+    private static final float GAP = 8f; // vertical gap between stacked pills
+    private static final float CORNER = 10f; // corner radius
+    private static final float SHADOW_RADIUS = 6f;
+    private static final float SHADOW_DY = 2f;
+    private static final int BG_COLOR = Color.argb(56, 31, 31, 31); // ~iOS gray at ~22% alpha
+    private static final int MAX_CACHED_PILLS = 4;
+
+    /** Image drawn on every capture while set. */
+    static final class Watermark {
+
+        final Bitmap image;
+        final String position; // top-left, top-right, bottom-left, bottom-right or center
+        final float scale; // watermark width as a fraction of the capture width
+        final float opacity;
+
+        Watermark(Bitmap image, String position, float scale, float opacity) {
+            this.image = image;
+            this.position = position;
+            this.scale = scale;
+            this.opacity = opacity;
+        }
+    }
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG | Paint.LINEAR_TEXT_FLAG);
+    private final Paint bgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint watermarkPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final SimpleDateFormat exifDateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+    private final SimpleDateFormat labelFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private float fontPx = -1;
+    private float ascent;
+    private float lineHeight;
+    // Label -> pre-rendered pill (with its shadow) at fontPx, least recently used first
+    private final LinkedHashMap<String, Bitmap> pills = new LinkedHashMap<String, Bitmap>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+            if (size() <= MAX_CACHED_PILLS) return false;
+            eldest.getValue().recycle();
+            return true;
+        }
+    };
+    private Watermark watermark;
+    private Bitmap scaledWatermark;
+    private Watermark scaledWatermarkOf; // the watermark scaledWatermark was scaled from
+    private int scaledWatermarkForWidth = -1;
+
+    OverlayRenderer() {
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        textPaint.setTextAlign(Paint.Align.LEFT);
+        textPaint.setDither(true);
+        textPaint.setFilterBitmap(true);
+        textPaint.setHinting(Paint.HINTING_ON);
+        bgPaint.setColor(BG_COLOR);
+        bgPaint.setStyle(Paint.Style.FILL);
+        bgPaint.setShadowLayer(SHADOW_RADIUS, 0f, SHADOW_DY, Color.argb(64, 0, 0, 0));
+    }
+
+    synchronized void setWatermark(Watermark watermark) {
+        this.watermark = watermark;
+        dropScaledWatermark();
+    }
+
+    synchronized boolean hasWatermark() {
+        return watermark != null;
+    }
+
+    /**
+     * The overlay of one capture, with its labels and watermark resolved now so every strip of the
+     * capture shows the same overlay, whatever setWatermark does meanwhile. Pills go top-right,
+     * timestamp above location. Null when there is nothing to draw.
+     */
+    StripEncoder.Painter painterFor(ExifInterface exif, boolean embedTimestamp, boolean embedLocation) {
+        final String when;
+        final String where;
+        final Watermark mark;
+        synchronized (this) {
+            when = embedTimestamp ? buildTimestampString(exif) : null;
+            where = embedLocation ? buildLocationString(exif) : null;
+            mark = watermark;
+        }
+        final boolean hasWhen = when != null && !when.isEmpty();
+        final boolean hasWhere = where != null && !where.isEmpty();
+        if (!hasWhen && !hasWhere && mark == null) {
+            Log.d(TAG, "capturePhoto: nothing to draw");
+            return null;
+        }
+        return (canvas, width, height) -> draw(canvas, width, height, hasWhen ? when : null, hasWhere ? where : null, mark);
+    }
+
+    private synchronized void draw(Canvas canvas, int width, int height, String when, String where, Watermark mark) {
+        if (mark != null) {
+            drawWatermark(canvas, width, height, mark);
+        }
+
+        setFontSize(Math.max(10f, width * FONT_RATIO));
+        float top = MARGIN;
+        if (when != null) {
+            top = drawPill(canvas, width, when, top) + GAP;
+        }
+        if (where != null) {
+            drawPill(canvas, width, where, top);
+        }
+    }
+
+    /** Drops the cached bitmaps; the renderer stays usable and rebuilds them on demand. */
+    synchronized void release() {
+        for (Bitmap pill : pills.values()) pill.recycle();
+        pills.clear();
+        dropScaledWatermark();
+    }
+
+    private void dropScaledWatermark() {
+        // createScaledBitmap returns the source itself when the size already matches
+        if (scaledWatermark != null && scaledWatermark != scaledWatermarkOf.image) {
+            scaledWatermark.recycle();
+        }
+        scaledWatermark = null;
+        scaledWatermarkOf = null;
+        scaledWatermarkForWidth = -1;
+    }
+
+    private void setFontSize(float px) {
+        if (px == fontPx) return;
+        fontPx = px;
+        textPaint.setTextSize(px);
+        Paint.FontMetrics fm = textPaint.getFontMetrics();
+        ascent = fm.ascent;
+        lineHeight = fm.descent - fm.ascent;
+        for (Bitmap pill : pills.values()) pill.recycle();
+        pills.clear();
+    }
+
+    // Blits the label's pill aligned to the top-right; returns the pill's bottom Y
+    private float drawPill(Canvas canvas, int imageWidth, String label, float top) {
+        Bitmap pill = pills.get(label);
+        if (pill == null) {
+            pill = renderPill(label);
+            pills.put(label, pill);
+        }
+        float bgW = pill.getWidth() - 2 * shadowPad();
+        float bgH = pill.getHeight() - 2 * shadowPad();
+        float left = Math.max(0, imageWidth - bgW - MARGIN);
+        canvas.drawBitmap(pill, left - shadowPad(), top - shadowPad(), null);
+        return top + bgH;
+    }
+
+    // Background, shadow and text in a bitmap just large enough for them
+    private Bitmap renderPill(String label) {
+        float pad = shadowPad();
+        float bgW = textPaint.measureText(label) + PADDING_H * 2f;
+        float bgH = lineHeight + PADDING_V * 2f;
+        Bitmap pill = Bitmap.createBitmap(
+            (int) Math.ceil(bgW + 2 * pad),
+            (int) Math.ceil(bgH + 2 * pad),
+            Bitmap.Config.ARGB_8888
+        );
+        Canvas canvas = new Canvas(pill);
+        canvas.drawRoundRect(pad, pad, pad + bgW, pad + bgH, CORNER, CORNER, bgPaint);
+        canvas.drawText(label, pad + PADDING_H, pad + PADDING_V - ascent, textPaint);
+        return pill;
+    }
+
+    // Room around the pill for its shadow
+    private static float shadowPad() {
+        return (float) Math.ceil(SHADOW_RADIUS + SHADOW_DY);
+    }
+
+    private void drawWatermark(Canvas canvas, int imageWidth, int imageHeight, Watermark watermark) {
+        if (scaledWatermarkOf != watermark || scaledWatermarkForWidth != imageWidth) {
+            dropScaledWatermark();
+            int w = Math.max(1, Math.round(imageWidth * watermark.scale));
+            int h = Math.max(1, Math.round((float) w * watermark.image.getHeight() / watermark.image.getWidth()));
+            scaledWatermark = Bitmap.createScaledBitmap(watermark.image, w, h, true);
+            scaledWatermarkOf = watermark;
+            scaledWatermarkForWidth = imageWidth;
+        }
+        float w = scaledWatermark.getWidth();
+        float h = scaledWatermark.getHeight();
+        float left;
+        float top;
+        switch (watermark.position) {
+            case "top-left":
+                left = MARGIN;
+                top = MARGIN;
+                break;
+            case "top-right":
+                left = imageWidth - w - MARGIN;
+                top = MARGIN;
+                break;
+            case "bottom-left":
+                left = MARGIN;
+                top = imageHeight - h - MARGIN;
+                break;
+            case "center":
+                left = (imageWidth - w) / 2f;
+                top = (imageHeight - h) / 2f;
+                break;
+            default: // bottom-right
+                left = imageWidth - w - MARGIN;
+                top = imageHeight - h - MARGIN;
+                break;
+        }
+        watermarkPaint.setAlpha(Math.round(255 * watermark.opacity));
+        canvas.drawBitmap(scaledWatermark, left, top, watermarkPaint);
+    }
+
+    /** "yyyy-MM-dd HH:mm:ss" from EXIF, falling back to now. */
+    private String buildTimestampString(ExifInterface exif) {
+        try {
+            if (exif != null) {
+                String exifDate = exif.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL);
+                if (exifDate == null || exifDate.trim().isEmpty()) {
+                    exifDate = exif.getAttribute(ExifInterface.TAG_DATETIME);
+                }
+                if (exifDate != null && !exifDate.trim().isEmpty()) {
+                    Date d = exifDateFormat.parse(exifDate);
+                    if (d != null) {
+                        return labelFormat.format(d);
+                    }
+                }
+            }
+        } catch (Throwable ignored) {}
+        // Fallback to "now" if EXIF missing/invalid
+        return labelFormat.format(new Date());
+    }
+
+    /** "lat, lon" from EXIF GPS, or null when absent (so the pill is skipped). */
+    private static String buildLocationString(ExifInterface exif) {
+        if (exif == null) return null;
+        try {
+            float[] latLong = new float[2];
+            if (exif.getLatLong(latLong)) {
+                // Keep a compact but readable precision (5 decimals ≈ ~1 m–10 m)
+                return String.format(Locale.US, "%.5f", latLong[0]) + ", " + String.format(Locale.US, "%.5f", latLong[1]);
+            }
+        } catch (Throwable ignored) {}
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+package app.capgo.capacitor.camera.preview;
+
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Coarse luminance signature of a frame: the mean luma of each cell of a 32x32 grid, read
+ * from a sparse 4x4 sample pattern per cell on the Y plane. The difference between two
+ * signatures is the mean absolute cell difference, from 0 (identical) to 255.
+ *
+ * Not thread-safe: meant to be owned by the analyzer thread.
+ */
+final class SceneChangeDetector {
+
+    static final int GRID = 32;
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private int[] reference = null;
+    private int[] current = new int[GRID * GRID];
+
+    /** Computes the frame's signature and returns its difference from the reference (255 when there is none). */
+    double measure(ImageProxy image) {
+        ImageProxy.PlaneProxy y = image.getPlanes()[0];
+        computeSignature(y.getBuffer(), y.getRowStride(), y.getPixelStride(), image.getWidth(), image.getHeight(), current);
+        return reference != null ? difference(reference, current) : 255;
+    }
+
+    /** Makes the last measured frame the reference that later frames are compared against. */
+    void commit() {
+        int[] previous = reference;
+        reference = current;
+        current = previous != null ? previous : new int[GRID * GRID];
+    }
+
+    void reset() {
+        reference = null;
+    }
+
+    static void computeSignature(ByteBuffer luma, int rowStride, int pixelStride, int width, int height, int[] out) {
+        for (int cy = 0; cy < GRID; cy++) {
+            int top = cy * height / GRID;
+            int cellH = Math.max(1, (cy + 1) * height / GRID - top);
+            for (int cx = 0; cx < GRID; cx++) {
+                int left = cx * width / GRID;
+                int cellW = Math.max(1, (cx + 1) * width / GRID - left);
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int row = Math.min(height - 1, top + (2 * sy + 1) * cellH / (2 * SAMPLES_PER_CELL)) * rowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int x = Math.min(width - 1, left + (2 * sx + 1) * cellW / (2 * SAMPLES_PER_CELL));
+                        sum += luma.get(row + x * pixelStride) & 0xFF;
+                    }
+                }
+                out[cy * GRID + cx] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    static double difference(int[] a, int[] b) {
+        long total = 0;
+        for (int i = 0; i < a.length; i++) {
+            total += Math.abs(a[i] - b[i]);
+        }
+        return (double) total / a.length;
+    }
+}
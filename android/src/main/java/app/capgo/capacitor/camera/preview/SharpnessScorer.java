@@ -0,0 +1,51 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Rect;
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap focus/motion-blur score computed on the Y plane only: the mean squared horizontal and
+ * vertical luma gradient, sampled on a sparse grid. Higher is sharper. Scores are only
+ * comparable between frames of the same scene and region.
+ */
+final class SharpnessScorer {
+
+    // Grid points per axis; enough to be stable, small enough to cost well under a millisecond
+    private static final int GRID = 64;
+
+    private SharpnessScorer() {}
+
+    /** Scores the given region of the frame (the full frame when crop is null). */
+    static double score(ImageProxy image, Rect crop) {
+        Rect area = crop != null ? new Rect(crop) : new Rect(0, 0, image.getWidth(), image.getHeight());
+        if (!area.intersect(0, 0, image.getWidth(), image.getHeight())) return 0;
+        ImageProxy.PlaneProxy y = image.getPlanes()[0];
+        return score(y.getBuffer(), y.getRowStride(), y.getPixelStride(), area.left, area.top, area.width(), area.height());
+    }
+
+    static double score(ByteBuffer luma, int rowStride, int pixelStride, int left, int top, int width, int height) {
+        // Each grid point needs its right and lower neighbour
+        int usableW = width - 1;
+        int usableH = height - 1;
+        if (usableW <= 0 || usableH <= 0) return 0;
+        int stepX = Math.max(1, usableW / GRID);
+        int stepY = Math.max(1, usableH / GRID);
+
+        long sum = 0;
+        long count = 0;
+        for (int y = top; y < top + usableH; y += stepY) {
+            int row = y * rowStride;
+            int nextRow = row + rowStride;
+            for (int x = left; x < left + usableW; x += stepX) {
+                int offset = x * pixelStride;
+                int center = luma.get(row + offset) & 0xFF;
+                int dx = (luma.get(row + offset + pixelStride) & 0xFF) - center;
+                int dy = (luma.get(nextRow + offset) & 0xFF) - center;
+                sum += dx * dx + dy * dy;
+                count++;
+            }
+        }
+        return count > 0 ? (double) sum / count : 0;
+    }
+}
@@ -0,0 +1,283 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Crops, rotates, scales and re-encodes a captured JPEG within a memory budget.
+ *
+ * The output is produced in horizontal strips. For each strip only the source band it covers is
+ * region-decoded (subsampled when scaling down), drawn into a strip bitmap through one
+ * rotate/scale matrix, overlaid and JPEG-encoded; the encoded strips are then joined in the DCT
+ * domain by {@link JpegLosslessTransform.StripJoiner}. No full-resolution bitmap ever exists, so
+ * the peak is one strip plus its source band plus the compressed output. When the whole output
+ * fits the budget it is a single strip and the result is that strip's JPEG, as before tiling.
+ * Other output formats cannot be joined, so they are always encoded from a single strip; so is a
+ * JPEG whose strips the joiner rejects, over budget rather than losing the photo.
+ */
+final class StripEncoder {
+
+    private static final String TAG = "CameraPreview StripEncoder";
+
+    // Strip heights are whole MCU rows of the 4:2:0 JPEGs Bitmap.compress writes
+    static final int STRIP_ALIGN = 16;
+    // Source rows decoded beyond each band so filtering at strip edges sees real neighbours
+    private static final int BAND_MARGIN = 2;
+
+    /** Draws on top of the image. The canvas is in output coordinates, clipped to the current strip. */
+    interface Painter {
+        void paint(Canvas canvas, int width, int height);
+    }
+
+    static final class Result {
+
+        final byte[] data; // encoded image in the requested format
+        final int width;
+        final int height;
+        final int strips;
+        final long peakBytes; // bitmaps and buffers held at once, not counting the input JPEG
+
+        Result(byte[] data, int width, int height, int strips, long peakBytes) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.strips = strips;
+            this.peakBytes = peakBytes;
+        }
+    }
+
+    private StripEncoder() {}
+
+    /** A quarter of the heap: leaves room for the capture bytes, queued captures and the app. */
+    static long defaultBudget() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Encodes the uprightCrop region of the JPEG (in coordinates after rotating by rotationDegrees)
+     * at outW x outH in the given {@link ImageEncoder} format. Non-JPEG output carries the JPEG's
+     * EXIF; JPEG output has none, callers splice it in. painter may be null.
+     */
+    static Result encode(
+        byte[] jpeg,
+        int rotationDegrees,
+        Rect uprightCrop,
+        int outW,
+        int outH,
+        String format,
+        int quality,
+        long budgetBytes,
+        Painter painter
+    ) throws IOException {
+        Result result = encode(jpeg, rotationDegrees, uprightCrop, outW, outH, format, quality, budgetBytes, painter, true);
+        if (result == null) {
+            // The joiner expects Bitmap.compress's usual layout; any other output is encoded whole
+            Log.w(TAG, "encode: strips could not be joined, encoding as a single strip");
+            result = encode(jpeg, rotationDegrees, uprightCrop, outW, outH, format, quality, budgetBytes, painter, false);
+        }
+        return result;
+    }
+
+    // Null when tiled and the encoded strips could not be joined
+    private static Result encode(
+        byte[] jpeg,
+        int rotationDegrees,
+        Rect uprightCrop,
+        int outW,
+        int outH,
+        String format,
+        int quality,
+        long budgetBytes,
+        Painter painter,
+        boolean tiled
+    ) throws IOException {
+        int[] size = CaptureDecoder.readSize(jpeg);
+        boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+        int uprightW = swap ? size[1] : size[0];
+        int uprightH = swap ? size[0] : size[1];
+        Rect crop = new Rect(uprightCrop);
+        if (!crop.intersect(0, 0, uprightW, uprightH)) {
+            throw new IOException("Crop outside of the image");
+        }
+        int sampleSize = CaptureDecoder.sampleSizeFor(crop.width(), crop.height(), outW, outH);
+        long outputEstimate = (long) ((double) jpeg.length * outW * outH / ((double) size[0] * size[1]));
+        boolean jpegOut = ImageEncoder.JPEG.equals(format);
+        int stripRows = jpegOut && tiled ? stripRowsFor(crop, outW, outH, sampleSize, outputEstimate, budgetBytes) : outH;
+
+        Peak peak = new Peak();
+        BitmapRegionDecoder decoder = null;
+        Bitmap wholeSource = null;
+        try {
+            decoder = CaptureDecoder.newRegionDecoder(jpeg);
+        } catch (IOException | IllegalArgumentException e) {
+            // Whole-image fallback: over budget, but still free of full-resolution copies
+            Log.w(TAG, "encode: region decoding unavailable, decoding the whole image", e);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            wholeSource = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+            if (wholeSource == null) throw new IOException("Unable to decode JPEG");
+            peak.hold(wholeSource.getAllocationByteCount());
+        }
+
+        Bitmap strip = null;
+        try {
+            strip = Bitmap.createBitmap(outW, stripRows, Bitmap.Config.ARGB_8888);
+            peak.hold(strip.getAllocationByteCount());
+            Paint filter = new Paint(Paint.FILTER_BITMAP_FLAG);
+            JpegLosslessTransform.StripJoiner joiner = stripRows < outH
+                ? new JpegLosslessTransform.StripJoiner(outW, outH, (int) Math.min(Integer.MAX_VALUE, outputEstimate))
+                : null;
+            byte[] single = null;
+            int strips = 0;
+            for (int top = 0; top < outH; top += stripRows) {
+                int rows = Math.min(stripRows, outH - top);
+                if (rows != strip.getHeight()) {
+                    strip.reconfigure(outW, rows, Bitmap.Config.ARGB_8888);
+                }
+                Canvas canvas = new Canvas(strip);
+
+                // Upright source band behind these output rows
+                int bandTop = crop.top + (int) ((long) top * crop.height() / outH) - BAND_MARGIN * sampleSize;
+                int bandBottom = crop.top + (int) (((long) (top + rows) * crop.height() + outH - 1) / outH) + BAND_MARGIN * sampleSize;
+                Rect band = new Rect(crop.left, Math.max(0, bandTop), crop.right, Math.min(uprightH, bandBottom));
+                Rect source = CaptureDecoder.toSourceRect(band, rotationDegrees, size[0], size[1]);
+                Bitmap tile;
+                if (decoder != null) {
+                    BitmapFactory.Options options = new BitmapFactory.Options();
+                    options.inSampleSize = sampleSize;
+                    tile = decoder.decodeRegion(source, options);
+                    if (tile == null) throw new IOException("Unable to decode JPEG region");
+                } else {
+                    tile = wholeSource;
+                    source = new Rect(0, 0, size[0], size[1]);
+                }
+                Matrix matrix = tileToStrip(tile, source, rotationDegrees, size[0], size[1], crop, outW, outH, top);
+                canvas.drawBitmap(tile, matrix, filter);
+                if (tile != wholeSource) {
+                    peak.sample(tile.getAllocationByteCount() + (joiner != null ? joiner.size() : 0));
+                    tile.recycle();
+                }
+
+                if (painter != null) {
+                    canvas.save();
+                    canvas.translate(0, -top);
+                    painter.paint(canvas, outW, outH);
+                    canvas.restore();
+                }
+
+                byte[] encoded;
+                if (jpegOut) {
+                    ByteArrayOutputStream stripOut = new ByteArrayOutputStream();
+                    if (!strip.compress(Bitmap.CompressFormat.JPEG, quality, stripOut)) {
+                        throw new IOException("Unable to encode JPEG");
+                    }
+                    encoded = stripOut.toByteArray();
+                } else {
+                    encoded = ImageEncoder.encode(strip, format, quality, jpeg);
+                }
+                strips++;
+                if (joiner == null) {
+                    single = encoded;
+                    peak.sample(2L * encoded.length);
+                } else {
+                    peak.sample(2L * encoded.length + joiner.size());
+                    if (!joiner.append(encoded)) return null;
+                }
+            }
+            peak.release(strip.getAllocationByteCount());
+            strip.recycle();
+            strip = null;
+
+            byte[] out = single;
+            if (joiner != null) {
+                peak.sample(2L * joiner.size());
+                out = joiner.finish();
+                if (out == null) return null;
+            }
+            Log.d(TAG, "encode: " + outW + "x" + outH + " in " + strips + " strip(s) of " + stripRows + " rows, peak " + peak.max + " bytes");
+            return new Result(out, outW, outH, strips, peak.max);
+        } finally {
+            if (strip != null) strip.recycle();
+            if (decoder != null) decoder.recycle();
+            if (wholeSource != null) wholeSource.recycle();
+        }
+    }
+
+    // Tallest aligned strip whose bitmap and source band fit the budget next to the output; at
+    // least one MCU row, whatever the budget
+    static int stripRowsFor(Rect crop, int outW, int outH, int sampleSize, long outputEstimate, long budgetBytes) {
+        long stripRowBytes = 4L * outW;
+        double bandRowsPerOutRow = (double) crop.height() / outH / sampleSize;
+        long bandRowBytes = (long) Math.ceil(4.0 * crop.width() / sampleSize * bandRowsPerOutRow);
+        long bandMarginBytes = 4L * crop.width() / sampleSize * (2 * BAND_MARGIN + 1);
+        long available = budgetBytes - outputEstimate - bandMarginBytes;
+        long rows = available / (stripRowBytes + bandRowBytes);
+        if (rows >= outH) return outH;
+        return (int) Math.max(STRIP_ALIGN, rows / STRIP_ALIGN * STRIP_ALIGN);
+    }
+
+    // Tile pixels -> encoded-image pixels -> upright pixels -> output pixels -> strip pixels
+    private static Matrix tileToStrip(
+        Bitmap tile,
+        Rect source,
+        int rotationDegrees,
+        int srcW,
+        int srcH,
+        Rect crop,
+        int outW,
+        int outH,
+        int stripTop
+    ) {
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) source.width() / tile.getWidth(), (float) source.height() / tile.getHeight());
+        matrix.postTranslate(source.left, source.top);
+        switch (rotationDegrees) {
+            case 90:
+                matrix.postRotate(90);
+                matrix.postTranslate(srcH, 0);
+                break;
+            case 180:
+                matrix.postRotate(180);
+                matrix.postTranslate(srcW, srcH);
+                break;
+            case 270:
+                matrix.postRotate(270);
+                matrix.postTranslate(0, srcW);
+                break;
+            default:
+                break;
+        }
+        matrix.postTranslate(-crop.left, -crop.top);
+        matrix.postScale((float) outW / crop.width(), (float) outH / crop.height());
+        matrix.postTranslate(0, -stripTop);
+        return matrix;
+    }
+
+    // Long-lived allocations plus the largest transient sample seen on top of them
+    private static final class Peak {
+
+        long held = 0;
+        long max = 0;
+
+        void hold(long bytes) {
+            held += bytes;
+            max = Math.max(max, held);
+        }
+
+        void release(long bytes) {
+            held -= bytes;
+        }
+
+        void sample(long transientBytes) {
+            max = Math.max(max, held + transientBytes);
+        }
+    }
+}
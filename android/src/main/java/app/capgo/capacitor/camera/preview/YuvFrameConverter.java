@@ -0,0 +1,150 @@
+package app.capgo.capacitor.camera.preview;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a region of a YUV_420_888 analysis frame straight into an output-sized ARGB bitmap.
+ * Crop and downscale are applied while reading the Y/U/V planes, so only the output pixels are
+ * ever converted to RGB; the full sensor-sized frame is never materialized.
+ */
+final class YuvFrameConverter {
+
+    /** A crop rectangle in frame coordinates and the size it should be scaled to. */
+    static final class Region {
+
+        final Rect crop;
+        final int outWidth;
+        final int outHeight;
+
+        Region(Rect crop, int outWidth, int outHeight) {
+            this.crop = crop;
+            this.outWidth = Math.max(1, outWidth);
+            this.outHeight = Math.max(1, outHeight);
+        }
+    }
+
+    private YuvFrameConverter() {}
+
+    /**
+     * Returns the given region of the frame as a bitmap. A null region converts the full frame.
+     * The image is not closed. Bitmaps of YUV frames come from the pool and should be handed back
+     * with {@link FrameBufferPool#releaseBitmap}.
+     */
+    static Bitmap toBitmap(ImageProxy image, Region region, FrameBufferPool pool) {
+        if (region == null) {
+            region = new Region(new Rect(0, 0, image.getWidth(), image.getHeight()), image.getWidth(), image.getHeight());
+        }
+        Rect crop = new Rect(region.crop);
+        if (!crop.intersect(0, 0, image.getWidth(), image.getHeight()) || crop.isEmpty()) {
+            return image.toBitmap();
+        }
+        if (image.getFormat() != ImageFormat.YUV_420_888) {
+            // Not a YUV frame (e.g. RGBA output): fall back to converting first, then crop/scale
+            Bitmap full = image.toBitmap();
+            Bitmap cropped = Bitmap.createBitmap(full, crop.left, crop.top, crop.width(), crop.height());
+            Bitmap scaled = Bitmap.createScaledBitmap(cropped, region.outWidth, region.outHeight, true);
+            if (cropped != full && cropped != scaled) cropped.recycle();
+            if (full != scaled) full.recycle();
+            return scaled;
+        }
+
+        int[] argb = convertRegion(
+            image.getPlanes(),
+            crop.left,
+            crop.top,
+            crop.width(),
+            crop.height(),
+            region.outWidth,
+            region.outHeight,
+            pool
+        );
+        Bitmap out = pool.acquireBitmap(region.outWidth, region.outHeight);
+        out.setPixels(argb, 0, region.outWidth, 0, 0, region.outWidth, region.outHeight);
+        return out;
+    }
+
+    /**
+     * Converts the cropLeft/cropTop/cropW/cropH region of the planes into outW x outH ARGB pixels.
+     * Returns the pool's pixel buffer, filled row by row; only pooled buffers are used.
+     */
+    static int[] convertRegion(
+        ImageProxy.PlaneProxy[] planes,
+        int cropLeft,
+        int cropTop,
+        int cropW,
+        int cropH,
+        int outW,
+        int outH,
+        FrameBufferPool pool
+    ) {
+        int[] out = pool.pixelBuffer(outW * outH);
+        ByteBuffer yBuf = planes[0].getBuffer();
+        ByteBuffer uBuf = planes[1].getBuffer();
+        ByteBuffer vBuf = planes[2].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uRowStride = planes[1].getRowStride();
+        int uPixelStride = planes[1].getPixelStride();
+        int vRowStride = planes[2].getRowStride();
+        int vPixelStride = planes[2].getPixelStride();
+
+        // Two luma taps per axis when downscaling by 2x or more, to limit aliasing
+        boolean boxX = cropW >= outW * 2;
+        boolean boxY = cropH >= outH * 2;
+
+        // Per-column offsets: first luma tap, second luma tap, chroma column
+        int[] columns = pool.columnBuffer(3 * outW);
+        int x1 = outW;
+        int cx = 2 * outW;
+        for (int ox = 0; ox < outW; ox++) {
+            long start = (long) ox * cropW;
+            int a = cropLeft + (int) ((start + cropW / 4) / outW);
+            int b = cropLeft + (int) ((start + (3L * cropW) / 4) / outW);
+            int center = cropLeft + (int) ((start + cropW / 2) / outW);
+            columns[ox] = (boxX ? a : center) * yPixelStride;
+            columns[x1 + ox] = (boxX ? b : center) * yPixelStride;
+            columns[cx + ox] = center / 2;
+        }
+
+        int i = 0;
+        for (int oy = 0; oy < outH; oy++) {
+            long start = (long) oy * cropH;
+            int a = cropTop + (int) ((start + cropH / 4) / outH);
+            int b = cropTop + (int) ((start + (3L * cropH) / 4) / outH);
+            int center = cropTop + (int) ((start + cropH / 2) / outH);
+            int row0 = (boxY ? a : center) * yRowStride;
+            int row1 = (boxY ? b : center) * yRowStride;
+            int uRow = (center / 2) * uRowStride;
+            int vRow = (center / 2) * vRowStride;
+
+            for (int ox = 0; ox < outW; ox++) {
+                int y =
+                    ((yBuf.get(row0 + columns[ox]) & 0xFF) +
+                        (yBuf.get(row0 + columns[x1 + ox]) & 0xFF) +
+                        (yBuf.get(row1 + columns[ox]) & 0xFF) +
+                        (yBuf.get(row1 + columns[x1 + ox]) & 0xFF) +
+                        2) >>
+                    2;
+                int u = (uBuf.get(uRow + columns[cx + ox] * uPixelStride) & 0xFF) - 128;
+                int v = (vBuf.get(vRow + columns[cx + ox] * vPixelStride) & 0xFF) - 128;
+                out[i++] = yuvToArgb(y, u, v);
+            }
+        }
+        return out;
+    }
+
+    // BT.601 full-range (JFIF) conversion in 10-bit fixed point
+    private static int yuvToArgb(int y, int u, int v) {
+        int r = y + ((1436 * v) >> 10);
+        int g = y - ((352 * u + 731 * v) >> 10);
+        int b = y + ((1815 * u) >> 10);
+        r = r < 0 ? 0 : (r > 255 ? 255 : r);
+        g = g < 0 ? 0 : (g > 255 ? 255 : g);
+        b = b < 0 ? 0 : (b > 255 ? 255 : b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+}
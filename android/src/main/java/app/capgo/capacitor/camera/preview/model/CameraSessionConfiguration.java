@@ -24,6 +24,12 @@ public class CameraSessionConfiguration {
     private final boolean enableVideoMode;
     private float targetZoom = 1.0f;
     private boolean isCentered = false;
+    // Analysis stream resolution/aspect, independent of preview and capture (0 / null = shared)
+    private int analysisWidth = 0;
+    private int analysisHeight = 0;
+    private String analysisAspectRatio = null;
+    // ImageCapture mode: minimizeLatency, maximizeQuality or zeroShutterLag (falls back when unsupported)
+    private String captureMode = "minimizeLatency";
 
     public CameraSessionConfiguration(
         String deviceId,
@@ -160,6 +166,47 @@ public class CameraSessionConfiguration {
         isCentered = centered;
     }
 
+    public void setAnalysisResolution(int width, int height) {
+        this.analysisWidth = width;
+        this.analysisHeight = height;
+    }
+
+    public int getAnalysisWidth() {
+        return analysisWidth;
+    }
+
+    public int getAnalysisHeight() {
+        return analysisHeight;
+    }
+
+    public void setAnalysisAspectRatio(String aspectRatio) {
+        this.analysisAspectRatio = aspectRatio;
+    }
+
+    public String getAnalysisAspectRatio() {
+        return analysisAspectRatio;
+    }
+
+    public void setCaptureMode(String captureMode) {
+        this.captureMode = captureMode;
+    }
+
+    public String getCaptureMode() {
+        return captureMode;
+    }
+
+    /**
+     * Carries the analysis and capture-mode settings over when a configuration is rebuilt (flip,
+     * aspect ratio, grid, size changes).
+     */
+    public void copySessionSettings(CameraSessionConfiguration other) {
+        if (other == null) return;
+        this.analysisWidth = other.analysisWidth;
+        this.analysisHeight = other.analysisHeight;
+        this.analysisAspectRatio = other.analysisAspectRatio;
+        this.captureMode = other.captureMode;
+    }
+
     public boolean getDisableFocusIndicator() {
         return disableFocusIndicator;
     }
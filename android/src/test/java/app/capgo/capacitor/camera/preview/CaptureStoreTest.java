@@ -0,0 +1,141 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CaptureStoreTest {
+
+    private File dir;
+
+    @Before
+    public void createDir() throws Exception {
+        dir = Files.createTempDirectory("capture-store").toFile();
+    }
+
+    @After
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void namesNeverCollide() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 1 << 20);
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(names.add(store.write("cpcp_", ".jpg", new byte[] { 1 }).getName()));
+        }
+        assertEquals(50, store.stats()[0]);
+    }
+
+    @Test
+    public void evictsOldestOverBudget() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 300);
+        File a = store.write("cpcp_", ".jpg", new byte[100]);
+        File b = store.write("cpcp_", ".jpg", new byte[100]);
+        File c = store.write("cpcp_", ".jpg", new byte[100]);
+        File d = store.write("cpcp_", ".jpg", new byte[100]);
+
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+        assertTrue(d.exists());
+        assertArrayEquals(new long[] { 3, 300, 300, 1, 100 }, store.stats());
+    }
+
+    @Test
+    public void keepsNewestFileEvenOverBudget() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 50);
+        File a = store.write("cpcp_", ".jpg", new byte[40]);
+        File b = store.write("cpcp_", ".jpg", new byte[80]);
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertEquals(1, store.stats()[0]);
+    }
+
+    @Test
+    public void pinnedFilesSurviveEvictionUntilUnpinned() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 200);
+        File a = store.write("cpcp_burst_", ".jpg", new byte[100], true);
+        File b = store.write("cpcp_burst_", ".jpg", new byte[100], true);
+        File c = store.write("cpcp_", ".jpg", new byte[100]);
+
+        assertTrue(a.exists());
+        assertTrue(b.exists());
+        assertArrayEquals(new long[] { 3, 300 }, slice(store.stats()));
+
+        // Unpinning alone deletes nothing; the next write evicts
+        store.unpin(Arrays.asList(a.getAbsolutePath(), b.getAbsolutePath()));
+        assertTrue(a.exists());
+        store.write("cpcp_", ".jpg", new byte[100]);
+        assertFalse(a.exists());
+        assertFalse(b.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void loweringTheBudgetEvicts() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 1000);
+        for (int i = 0; i < 5; i++) store.write("cpcp_", ".jpg", new byte[100]);
+        store.setMaxBytes(250);
+        assertArrayEquals(new long[] { 2, 200, 250, 3, 300 }, store.stats());
+    }
+
+    @Test
+    public void removeAndPurge() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 1000);
+        File a = store.write("cpcp_", ".jpg", new byte[10]);
+        store.write("cpcp_", ".jpg", new byte[20]);
+        store.write("cpcp_burst_", ".jpg", new byte[30]);
+
+        assertTrue(store.remove("file://" + a.getAbsolutePath()));
+        assertFalse(a.exists());
+        assertFalse(store.remove(a.getAbsolutePath()));
+        assertFalse(store.remove(new File(dir.getParentFile(), "other.jpg").getAbsolutePath()));
+
+        assertArrayEquals(new long[] { 0, 0 }, store.purge(60_000));
+        assertArrayEquals(new long[] { 2, 50 }, store.purge(0));
+        assertEquals(0, store.stats()[0]);
+    }
+
+    @Test
+    public void indexSurvivesRestartAndIsRebuiltWhenMissing() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 1000);
+        store.write("cpcp_", ".jpg", new byte[10]);
+        store.write("cpcp_", ".jpg", new byte[20]);
+
+        // Files not written through the store are only picked up by a rebuild
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "stray.jpg"))) {
+            out.write(new byte[5]);
+        }
+        assertArrayEquals(new long[] { 2, 30 }, slice(new CaptureStore(dir, 1000).stats()));
+
+        assertTrue(new File(dir, ".index").delete());
+        assertArrayEquals(new long[] { 3, 35 }, slice(new CaptureStore(dir, 1000).stats()));
+    }
+
+    @Test
+    public void dropsIndexEntriesOfDeletedFiles() throws Exception {
+        CaptureStore store = new CaptureStore(dir, 1000);
+        File a = store.write("cpcp_", ".jpg", new byte[10]);
+        store.write("cpcp_", ".jpg", new byte[20]);
+
+        // The OS clears cache dirs without telling the store
+        assertTrue(a.delete());
+        assertArrayEquals(new long[] { 1, 20 }, slice(new CaptureStore(dir, 1000).stats()));
+    }
+
+    private static long[] slice(long[] stats) {
+        return new long[] { stats[0], stats[1] };
+    }
+}
@@ -0,0 +1,62 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class CaptureTimingsTest {
+
+    @Test
+    public void traceStagesAddUpToTotal() throws Exception {
+        CaptureTimings.Trace trace = new CaptureTimings.Trace();
+        Thread.sleep(2);
+        trace.lap("shutter");
+        trace.lap("decode");
+        Thread.sleep(2);
+        trace.lap("shutter");
+
+        Map<String, Double> ms = trace.toMillis();
+        assertEquals(Arrays.asList("shutter", "decode", CaptureTimings.TOTAL), new ArrayList<>(ms.keySet()));
+        assertTrue(ms.get("shutter") >= 4.0);
+        assertEquals(ms.get(CaptureTimings.TOTAL), ms.get("shutter") + ms.get("decode"), 0.2);
+    }
+
+    @Test
+    public void percentilesAndBucketsOverTheWindow() {
+        CaptureTimings timings = new CaptureTimings();
+        for (int ms = 1; ms <= 100; ms++) {
+            timings.record("encode", ms * 1_000_000L);
+        }
+        CaptureTimings.StageStats stats = timings.snapshot().get("encode");
+        assertEquals(100, stats.count);
+        assertEquals(1.0, stats.min, 0);
+        assertEquals(50.0, stats.p50, 0);
+        assertEquals(90.0, stats.p90, 0);
+        assertEquals(99.0, stats.p99, 0);
+        assertEquals(100.0, stats.max, 0);
+        assertEquals(50.5, stats.mean, 0.1);
+        // <=5, <=10, <=25, <=50, <=100, then nothing above
+        assertArrayEquals(new int[] { 5, 5, 15, 25, 50, 0, 0, 0, 0, 0 }, stats.buckets);
+    }
+
+    @Test
+    public void windowKeepsOnlyRecentSamples() {
+        CaptureTimings timings = new CaptureTimings();
+        for (int i = 0; i < CaptureTimings.WINDOW; i++) {
+            timings.record("write", 1_000_000_000L);
+        }
+        for (int i = 0; i < CaptureTimings.WINDOW; i++) {
+            timings.record("write", 1_000_000L);
+        }
+        CaptureTimings.StageStats stats = timings.snapshot().get("write");
+        assertEquals(2L * CaptureTimings.WINDOW, stats.recorded);
+        assertEquals(CaptureTimings.WINDOW, stats.count);
+        assertEquals(1.0, stats.max, 0);
+
+        timings.reset();
+        assertTrue(timings.snapshot().isEmpty());
+    }
+}
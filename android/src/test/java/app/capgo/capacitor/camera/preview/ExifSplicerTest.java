@@ -0,0 +1,310 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import org.junit.Test;
+
+/**
+ * Checks that the spliced EXIF carries the same tags the former Commons Imaging rewrite produced:
+ * every source tag unchanged, except Orientation = 1 and the updated dimension tags.
+ */
+public class ExifSplicerTest {
+
+    private static final byte[] JFIF = { (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0 };
+    private static final byte[] BODY = {
+        (byte) 0xFF,
+        (byte) 0xDB,
+        0,
+        4,
+        1,
+        2,
+        (byte) 0xFF,
+        (byte) 0xDA,
+        0,
+        2,
+        9,
+        8,
+        7,
+        (byte) 0xFF,
+        (byte) 0xD9
+    };
+
+    @Test
+    public void patchesExistingTagsInBothByteOrders() throws Exception {
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            byte[] source = jpeg(exifSegment(order, true), BODY);
+            Map<String, Object> expected = readTags(source);
+            expected.put("0:274", 1);
+            expected.put("0:256", 1920);
+            expected.put("0:257", 1080);
+            expected.put("exif:40962", 1920);
+            expected.put("exif:40963", 1080);
+
+            byte[] out = ExifSplicer.splice(jpeg(JFIF, BODY), source, 1920, 1080);
+            assertEquals(expected, readTags(out));
+        }
+    }
+
+    @Test
+    public void addsMissingTags() throws Exception {
+        byte[] source = jpeg(exifSegment(ByteOrder.LITTLE_ENDIAN, false), BODY);
+        Map<String, Object> expected = readTags(source);
+        assertFalse(expected.containsKey("0:274"));
+        expected.put("0:274", 1);
+        expected.put("0:256", 640);
+        expected.put("0:257", 480);
+        expected.put("exif:40962", 640);
+        expected.put("exif:40963", 480);
+
+        byte[] out = ExifSplicer.splice(jpeg(BODY), source, 640, 480);
+        assertEquals(expected, readTags(out));
+    }
+
+    @Test
+    public void writesMinimalExifWhenSourceHasNone() throws Exception {
+        byte[] out = ExifSplicer.splice(jpeg(JFIF, BODY), jpeg(BODY), 100, 70000);
+        Map<String, Object> expected = new TreeMap<>();
+        expected.put("0:274", 1);
+        expected.put("0:256", 100);
+        expected.put("0:257", 70000);
+        expected.put("exif:40962", 100);
+        expected.put("exif:40963", 0xFFFF); // EXIF dimensions stay SHORT, clamped
+        assertEquals(expected, readTags(out));
+    }
+
+    @Test
+    public void onlyOrientationWithoutDimensions() throws Exception {
+        byte[] source = jpeg(exifSegment(ByteOrder.BIG_ENDIAN, true), BODY);
+        Map<String, Object> expected = readTags(source);
+        expected.put("0:274", 1);
+        assertEquals(expected, readTags(ExifSplicer.splice(jpeg(BODY), source, null, null)));
+    }
+
+    @Test
+    public void replacesTargetExifAndKeepsTheRestOfTheStream() throws Exception {
+        byte[] source = jpeg(exifSegment(ByteOrder.BIG_ENDIAN, true), BODY);
+        byte[] target = jpeg(JFIF, exifSegment(ByteOrder.LITTLE_ENDIAN, false), BODY);
+        byte[] out = ExifSplicer.splice(target, source, 10, 20);
+
+        // SOI, JFIF, then exactly one EXIF segment, then the target's remaining segments untouched
+        assertArrayEquals(Arrays.copyOfRange(target, 0, 2 + JFIF.length), Arrays.copyOfRange(out, 0, 2 + JFIF.length));
+        int exifStart = 2 + JFIF.length;
+        assertEquals(0xE1, out[exifStart + 1] & 0xFF);
+        int exifEnd = exifStart + 2 + (((out[exifStart + 2] & 0xFF) << 8) | (out[exifStart + 3] & 0xFF));
+        assertArrayEquals(BODY, Arrays.copyOfRange(out, exifEnd, out.length));
+        assertEquals("Maker", readTags(out).get("0:271"));
+    }
+
+    @Test
+    public void convertsSimpleWebpToExtendedWithExif() throws Exception {
+        byte[] source = jpeg(exifSegment(ByteOrder.LITTLE_ENDIAN, true), BODY);
+        // VP8L chunk of odd size (padded), header bits: 300x200 with alpha
+        int bits = 299 | (199 << 14) | (1 << 28);
+        byte[] vp8l = { 0x2F, (byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >> 24) };
+        byte[] webp = riff(chunk("VP8L", vp8l));
+
+        byte[] out = ExifSplicer.spliceWebp(webp, source, 300, 200);
+        ByteBuffer b = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(out.length - 8, b.getInt(4));
+        assertEquals("VP8X", fourCc(out, 12));
+        assertEquals(10, b.getInt(16));
+        assertEquals(0x18, out[20]); // EXIF + alpha
+        assertEquals(299, (b.getInt(24) & 0xFFFFFF));
+        assertEquals(199, (b.getInt(27) & 0xFFFFFF));
+        assertArrayEquals(chunk("VP8L", vp8l), Arrays.copyOfRange(out, 30, 30 + 14));
+        assertEquals("EXIF", fourCc(out, 44));
+        byte[] tiff = Arrays.copyOfRange(out, 52, 52 + b.getInt(48));
+
+        Map<String, Object> expected = readTags(source);
+        expected.put("0:274", 1);
+        expected.put("0:256", 300);
+        expected.put("0:257", 200);
+        expected.put("exif:40962", 300);
+        expected.put("exif:40963", 200);
+        assertEquals(expected, readTags(jpeg(app1(tiff), BODY)));
+    }
+
+    @Test
+    public void flagsExtendedWebpAndReplacesItsExif() throws Exception {
+        byte[] vp8x = { 0x10, 0, 0, 0, 9, 0, 0, 9, 0, 0 };
+        byte[] webp = riff(chunk("VP8X", vp8x), chunk("VP8 ", new byte[] { 1, 2, 3, 4 }), chunk("EXIF", new byte[] { 9 }));
+        byte[] out = ExifSplicer.spliceWebp(webp, jpeg(BODY), 10, 10);
+        assertEquals(0x18, out[20]);
+        assertEquals("VP8 ", fourCc(out, 30));
+        assertEquals("EXIF", fourCc(out, 42));
+        assertEquals(out.length, 42 + 8 + ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).getInt(46) + (out.length & 1));
+    }
+
+    @Test
+    public void insertsPngExifAfterHeader() throws Exception {
+        byte[] source = jpeg(exifSegment(ByteOrder.BIG_ENDIAN, true), BODY);
+        byte[] ihdr = pngChunk("IHDR", new byte[13]);
+        byte[] idat = pngChunk("IDAT", new byte[] { 1, 2, 3 });
+        byte[] iend = pngChunk("IEND", new byte[0]);
+        byte[] png = concat(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' }, ihdr, pngChunk("eXIf", new byte[] { 7 }), idat, iend);
+
+        byte[] out = ExifSplicer.splicePng(png, source, 64, 48);
+        ByteBuffer b = ByteBuffer.wrap(out);
+        int exifAt = 8 + ihdr.length;
+        assertEquals("eXIf", fourCc(out, exifAt + 4));
+        int length = b.getInt(exifAt);
+        byte[] tiff = Arrays.copyOfRange(out, exifAt + 8, exifAt + 8 + length);
+        CRC32 crc = new CRC32();
+        crc.update(out, exifAt + 4, 4 + length);
+        assertEquals((int) crc.getValue(), b.getInt(exifAt + 8 + length));
+        assertArrayEquals(concat(idat, iend), Arrays.copyOfRange(out, exifAt + 12 + length, out.length));
+        assertEquals(64, readTags(jpeg(app1(tiff), BODY)).get("0:256"));
+    }
+
+    private static byte[] riff(byte[]... chunks) {
+        byte[] body = concat(chunks);
+        ByteBuffer b = ByteBuffer.allocate(12 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(4 + body.length).put(new byte[] { 'W', 'E', 'B', 'P' }).put(body);
+        return b.array();
+    }
+
+    private static byte[] chunk(String fourCc, byte[] data) {
+        ByteBuffer b = ByteBuffer.allocate(8 + data.length + (data.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(fourCc.getBytes(StandardCharsets.US_ASCII)).putInt(data.length).put(data);
+        return b.array();
+    }
+
+    private static byte[] pngChunk(String type, byte[] data) {
+        ByteBuffer b = ByteBuffer.allocate(12 + data.length);
+        b.putInt(data.length).put(type.getBytes(StandardCharsets.US_ASCII)).put(data).putInt(0);
+        return b.array();
+    }
+
+    private static byte[] app1(byte[] tiff) {
+        byte[] header = { (byte) 0xFF, (byte) 0xE1, (byte) ((tiff.length + 8) >> 8), (byte) (tiff.length + 8), 'E', 'x', 'i', 'f', 0, 0 };
+        return concat(header, tiff);
+    }
+
+    private static String fourCc(byte[] data, int offset) {
+        return new String(data, offset, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] jpeg(byte[]... segments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (byte[] segment : segments) out.write(segment, 0, segment.length);
+        return out.toByteArray();
+    }
+
+    // APP1 with IFD0 (Make, dimensions as SHORT, optional Orientation = 6), an EXIF IFD and IFD1
+    private static byte[] exifSegment(ByteOrder order, boolean withOrientationAndPixelDims) {
+        ByteBuffer tiff = ByteBuffer.allocate(256).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? new byte[] { 'I', 'I' } : new byte[] { 'M', 'M' });
+        tiff.putShort((short) 42).putInt(8);
+
+        int ifd0Count = withOrientationAndPixelDims ? 5 : 4;
+        int exifIfd = 8 + 2 + 12 * ifd0Count + 4;
+        int exifCount = withOrientationAndPixelDims ? 3 : 1;
+        int ifd1 = exifIfd + 2 + 12 * exifCount + 4;
+        int makeValue = ifd1 + 2 + 12 + 4;
+        int dateValue = makeValue + 6;
+
+        tiff.putShort((short) ifd0Count);
+        entry(tiff, 0x0100, 3, 1, 4032);
+        entry(tiff, 0x0101, 3, 1, 3024);
+        entry(tiff, 0x010F, 2, 6, makeValue);
+        if (withOrientationAndPixelDims) entry(tiff, 0x0112, 3, 1, 6);
+        entry(tiff, 0x8769, 4, 1, exifIfd);
+        tiff.putInt(ifd1);
+
+        tiff.putShort((short) exifCount);
+        entry(tiff, 0x9003, 2, 20, dateValue);
+        if (withOrientationAndPixelDims) {
+            entry(tiff, 0xA002, 4, 1, 4032);
+            entry(tiff, 0xA003, 4, 1, 3024);
+        }
+        tiff.putInt(0);
+
+        tiff.putShort((short) 1);
+        entry(tiff, 0x0103, 3, 1, 6);
+        tiff.putInt(0);
+
+        tiff.put("Maker\0".getBytes(StandardCharsets.US_ASCII));
+        tiff.put("2024:01:02 03:04:05\0".getBytes(StandardCharsets.US_ASCII));
+
+        int length = tiff.position();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((length + 8) >> 8);
+        out.write((length + 8) & 0xFF);
+        out.write(new byte[] { 'E', 'x', 'i', 'f', 0, 0 }, 0, 6);
+        out.write(tiff.array(), 0, length);
+        return out.toByteArray();
+    }
+
+    private static void entry(ByteBuffer tiff, int tag, int type, int count, int value) {
+        tiff.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3 && count == 1) tiff.putShort((short) value).putShort((short) 0);
+        else tiff.putInt(value);
+    }
+
+    // Tags of IFD0 ("0:"), the EXIF IFD ("exif:") and IFD1 ("1:") of the single EXIF segment
+    private static Map<String, Object> readTags(byte[] jpeg) {
+        int pos = 2;
+        int exifCount = 0;
+        Map<String, Object> tags = new TreeMap<>();
+        while ((jpeg[pos] & 0xFF) == 0xFF && (jpeg[pos + 1] & 0xFF) != 0xDA) {
+            int length = ((jpeg[pos + 2] & 0xFF) << 8) | (jpeg[pos + 3] & 0xFF);
+            if ((jpeg[pos + 1] & 0xFF) == 0xE1 && jpeg[pos + 4] == 'E' && jpeg[pos + 5] == 'x') {
+                exifCount++;
+                ByteBuffer tiff = ByteBuffer.wrap(jpeg, pos + 10, length - 8).slice();
+                tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                int ifd0 = tiff.getInt(4);
+                readIfd(tiff, ifd0, "0:", tags);
+                int ifd1 = tiff.getInt(ifd0 + 2 + 12 * (tiff.getShort(ifd0) & 0xFFFF));
+                if (ifd1 != 0) readIfd(tiff, ifd1, "1:", tags);
+                Object exifIfd = tags.remove("0:34665");
+                if (exifIfd != null) readIfd(tiff, (Integer) exifIfd, "exif:", tags);
+            }
+            pos += 2 + length;
+        }
+        assertTrue("at most one EXIF segment", exifCount <= 1);
+        return tags;
+    }
+
+    private static void readIfd(ByteBuffer tiff, int ifd, String prefix, Map<String, Object> tags) {
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        int previousTag = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            assertTrue("entries sorted by tag", tag > previousTag);
+            previousTag = tag;
+            int type = tiff.getShort(entry + 2) & 0xFFFF;
+            int n = tiff.getInt(entry + 4);
+            Object value;
+            if (type == 2) {
+                int offset = n <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+                byte[] text = new byte[n - 1];
+                for (int j = 0; j < text.length; j++) text[j] = tiff.get(offset + j);
+                value = new String(text, StandardCharsets.US_ASCII);
+            } else if (type == 3) {
+                value = tiff.getShort(entry + 8) & 0xFFFF;
+            } else {
+                value = tiff.getInt(entry + 8);
+            }
+            tags.put(prefix + tag, value);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import androidx.camera.core.ImageProxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Local tests for the analyzer buffer pool. Bitmaps need a device, so these cover the
+ * pure-Java buffers: the YUV conversion scratch arrays, the JPEG output buffer and the Base64
+ * encoder.
+ */
+public class FrameBufferPoolTest {
+
+    @Test
+    public void encodeBase64_matchesJdkEncoder() {
+        FrameBufferPool pool = new FrameBufferPool();
+        Random random = new Random(42);
+        for (int length = 0; length <= 10; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertEquals(Base64.getEncoder().encodeToString(data), pool.encodeBase64(data, length));
+        }
+        byte[] large = new byte[4099];
+        random.nextBytes(large);
+        assertEquals(Base64.getEncoder().encodeToString(large), pool.encodeBase64(large, large.length));
+    }
+
+    @Test
+    public void encodeBase64_onlyEncodesRequestedPrefix() {
+        FrameBufferPool pool = new FrameBufferPool();
+        byte[] data = { 1, 2, 3, 4, 5, 6, 7 };
+        assertEquals(Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3, 4 }), pool.encodeBase64(data, 4));
+    }
+
+    @Test
+    public void steadyStateSamples_doNotAllocate() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool();
+        ImageProxy.PlaneProxy[] frame = yuvFrame(640, 480);
+        byte[] jpeg = new byte[20000];
+        new Random(7).nextBytes(jpeg);
+
+        // Warm-up samples size the buffers: a full frame and a downscaled one
+        sample(pool, frame, 640, 480, jpeg);
+        sample(pool, frame, 320, 240, jpeg);
+        long warmAllocations = pool.getAllocationCount();
+        assertTrue(warmAllocations > 0);
+
+        for (int i = 0; i < 50; i++) {
+            sample(pool, frame, 640, 480, jpeg);
+            sample(pool, frame, 320, 240, jpeg);
+        }
+        assertEquals(warmAllocations, pool.getAllocationCount());
+    }
+
+    @Test
+    public void convertRegion_convertsGreyFrame() {
+        FrameBufferPool pool = new FrameBufferPool();
+        int[] argb = YuvFrameConverter.convertRegion(yuvFrame(64, 48), 0, 0, 64, 48, 32, 24, pool);
+        for (int i = 0; i < 32 * 24; i++) {
+            assertEquals(0xFF808080, argb[i]);
+        }
+    }
+
+    @Test
+    public void outputBufferGrowth_isCounted() {
+        FrameBufferPool pool = new FrameBufferPool();
+        FrameBufferPool.OutputBuffer out = pool.outputBuffer(16);
+        long before = pool.getAllocationCount();
+        out.write(new byte[64], 0, 64);
+        assertEquals(before + 1, pool.getAllocationCount());
+        assertEquals(64, out.size());
+        assertTrue(out.capacity() >= 64);
+
+        // Smaller writes after a reset reuse the grown buffer
+        out = pool.outputBuffer(16);
+        out.write(new byte[32], 0, 32);
+        assertEquals(before + 1, pool.getAllocationCount());
+    }
+
+    @Test
+    public void clear_dropsBuffers() {
+        FrameBufferPool pool = new FrameBufferPool();
+        pool.pixelBuffer(1024);
+        pool.outputBuffer(1024);
+        pool.clear();
+        long before = pool.getAllocationCount();
+        pool.pixelBuffer(1024);
+        pool.outputBuffer(1024);
+        assertEquals(before + 2, pool.getAllocationCount());
+    }
+
+    // The pooled part of a sample as YuvFrameConverter.toBitmap and CameraXView.encodeBitmapToBase64
+    // run it; only the pooled bitmap and Bitmap.compress (replaced by a plain write) are left out
+    private static void sample(FrameBufferPool pool, ImageProxy.PlaneProxy[] frame, int outW, int outH, byte[] jpeg)
+        throws Exception {
+        YuvFrameConverter.convertRegion(frame, 0, 0, 640, 480, outW, outH, pool);
+        String encoded = pool.encodeToBase64(outW * outH / 2, (out) -> out.write(jpeg, 0, jpeg.length));
+        assertEquals(4 * ((jpeg.length + 2) / 3), encoded.length());
+    }
+
+    // Mid-grey YUV_420_888 frame with interleaved chroma, as most devices deliver it
+    private static ImageProxy.PlaneProxy[] yuvFrame(int width, int height) {
+        byte[] luma = new byte[width * height];
+        byte[] chroma = new byte[width * height / 2];
+        Arrays.fill(luma, (byte) 128);
+        Arrays.fill(chroma, (byte) 128);
+        return new ImageProxy.PlaneProxy[] {
+            plane(ByteBuffer.wrap(luma), width, 1),
+            plane(ByteBuffer.wrap(chroma), width, 2),
+            plane(ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice(), width, 2),
+        };
+    }
+
+    private static ImageProxy.PlaneProxy plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+        return new ImageProxy.PlaneProxy() {
+            @Override
+            public int getRowStride() {
+                return rowStride;
+            }
+
+            @Override
+            public int getPixelStride() {
+                return pixelStride;
+            }
+
+            @Override
+            public ByteBuffer getBuffer() {
+                return buffer;
+            }
+        };
+    }
+}
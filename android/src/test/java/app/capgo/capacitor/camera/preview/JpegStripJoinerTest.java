@@ -0,0 +1,96 @@
+package app.capgo.capacitor.camera.preview;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.junit.Test;
+
+/**
+ * Joins strips encoded by the JDK's JPEG writer (4:2:0, 16-row MCUs) and checks the result
+ * decodes to the same picture as the image encoded in one piece.
+ */
+public class JpegStripJoinerTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    @Test
+    public void joinedStripsDecodeLikeTheWholeImage() throws Exception {
+        BufferedImage image = testImage();
+        JpegLosslessTransform.StripJoiner joiner = new JpegLosslessTransform.StripJoiner(WIDTH, HEIGHT, 0);
+        assertTrue(joiner.append(encode(image.getSubimage(0, 0, WIDTH, 32))));
+        assertTrue(joiner.append(encode(image.getSubimage(0, 32, WIDTH, 32))));
+        assertTrue(joiner.append(encode(image.getSubimage(0, 64, WIDTH, HEIGHT - 64))));
+        byte[] joined = joiner.finish();
+        assertNotNull(joined);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(joined));
+        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(encode(image)));
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        long diff = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int a = decoded.getRGB(x, y);
+                int b = reference.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    diff += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        // Only chroma upsampling at the strip seams may differ
+        assertTrue("mean difference " + (double) diff / (WIDTH * HEIGHT * 3), diff < WIDTH * HEIGHT * 3);
+    }
+
+    @Test
+    public void rejectsStripsThatSplitAnMcuRow() throws Exception {
+        BufferedImage image = testImage();
+        JpegLosslessTransform.StripJoiner joiner = new JpegLosslessTransform.StripJoiner(WIDTH, HEIGHT, 0);
+        assertTrue(joiner.append(encode(image.getSubimage(0, 0, WIDTH, 20))));
+        assertFalse(joiner.append(encode(image.getSubimage(0, 20, WIDTH, HEIGHT - 20))));
+    }
+
+    @Test
+    public void rejectsMismatchedStripsAndIncompleteImages() throws Exception {
+        BufferedImage image = testImage();
+        JpegLosslessTransform.StripJoiner joiner = new JpegLosslessTransform.StripJoiner(WIDTH, HEIGHT, 0);
+        assertFalse(joiner.append(encode(image.getSubimage(0, 0, WIDTH / 2, 32))));
+        assertTrue(joiner.append(encode(image.getSubimage(0, 0, WIDTH, 32))));
+        assertNull(joiner.finish());
+    }
+
+    private static BufferedImage testImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, ((x * 255 / WIDTH) << 16) | ((y * 255 / HEIGHT) << 8) | ((x + y) % 64) * 4);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image) throws Exception {
+        // Subimages share the parent's raster; copy so the writer sees only the strip
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        copy.getGraphics().drawImage(image, 0, 0, null);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(copy, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
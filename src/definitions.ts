@@ -223,6 +223,46 @@ export interface CameraPreviewOptions {
    * @since 7.11.0
    */
   enableVideoMode?: boolean;
+  /**
+   * Target resolution of the analysis stream that backs `captureSample`, the frame stream and
+   * the sample cache, in sensor orientation (e.g. `{ width: 640, height: 480 }`). The closest
+   * supported size at or below it is used, independently of the preview and photo resolution.
+   * When omitted, analysis shares the highest available resolution with the preview.
+   * @platform android
+   * @since 7.27.0
+   */
+  analysisResolution?: { width: number; height: number };
+  /**
+   * Aspect ratio of the analysis stream. Defaults to the preview `aspectRatio`.
+   * @platform android
+   * @since 7.27.0
+   */
+  analysisAspectRatio?: '4:3' | '16:9';
+  /**
+   * Maximum number of `capture()` calls that can be in flight at once. The next photo is taken
+   * while earlier ones are still being processed, and results resolve in shutter order. Calls
+   * beyond the limit are rejected.
+   * @default 3
+   * @platform android
+   * @since 7.27.0
+   */
+  maxCapturesInFlight?: number;
+  /**
+   * Memory budget in bytes for re-encoding one photo (resizing, cropping to the preview, drawing
+   * overlays). Photos that do not fit are processed in horizontal strips, so high-resolution
+   * sensors never need a full-size bitmap. Defaults to a quarter of the app's heap limit.
+   * @platform android
+   * @since 7.27.0
+   */
+  captureMemoryBudget?: number;
+  /**
+   * How the camera takes photos. `zeroShutterLag` falls back to `minimizeLatency` on cameras
+   * without support; `getCaptureMode` reports the mode in use. Change it later with `setCaptureMode`.
+   * @default "minimizeLatency"
+   * @platform android
+   * @since 7.27.0
+   */
+  captureMode?: CaptureMode;
   /**
    * If true, forces the camera to start/restart even if it's already running or busy.
    * This will kill the current camera session and start a new one, ignoring all state checks.
@@ -248,17 +288,19 @@ export interface CameraPreviewPictureOptions {
   width?: number;
   /**
    * The quality of the captured image, from 0 to 100.
-   * Does not apply to `png` format.
+   * Does not apply to `png` format; for `webp-lossless` it is the compression effort.
    * @default 85
    */
   quality?: number;
   /**
-   * The format of the captured image.
+   * The format of the captured image. Formats missing from `getSupportedPictureFormats` are rejected.
    * @default "jpeg"
    */
   format?: PictureFormat;
   /**
    * If true, the captured image will be saved to the user's gallery.
+   * On Android the save completes after `capture` resolves; listen for `gallerySave` to get the result,
+   * matched to the capture by `captureId`.
    * @default false
    * @since 7.5.0
    */
@@ -295,6 +337,120 @@ export interface CameraPreviewPictureOptions {
    * @default "speed"
    */
   photoQualityPrioritization?: 'speed' | 'balanced' | 'quality';
+  /**
+   * If true, `capture` resolves as soon as a small thumbnail of the photo is ready, decoded at a
+   * reduced scale from the captured JPEG. The full-resolution result follows in a
+   * `captureComplete` event carrying the same `captureId`. If the full result happens to be ready
+   * first, `capture` resolves with it as usual (`thumbnail` is then absent).
+   * @default false
+   * @since 7.27.0
+   * @platform android
+   */
+  progressive?: boolean;
+  /**
+   * Longest edge of the progressive thumbnail in pixels.
+   * @default 320
+   * @since 7.27.0
+   * @platform android
+   */
+  thumbnailSize?: number;
+  /**
+   * If true, the result includes `timings`: how long each stage of this capture took.
+   * Stages are recorded for every capture either way; see `getCaptureTimings`.
+   * @default false
+   * @since 7.27.0
+   * @platform android
+   */
+  timings?: boolean;
+  /**
+   * Which EXIF tags the result's `exif` carries: `'all'`, `'none'`, or only the listed tag names
+   * (e.g. `['DateTimeOriginal', 'Orientation']`). Tags are only read when requested, which saves
+   * the parse and a large bridge payload. The image itself keeps its EXIF either way.
+   * @default "all"
+   * @since 7.27.0
+   * @platform android
+   */
+  exif?: 'none' | 'all' | string[];
+}
+
+/**
+ * Milliseconds spent in each stage of one capture, keyed by stage, in pipeline order, plus
+ * `total`. Stages are measured back to back on the monotonic clock, so they add up to `total`.
+ * Android stages: `shutter`, `read`, `processQueue`, `exifParse`, `exifAll` or `exifTags` (building
+ * the `exif` result, per the `exif` option), `decode`, `losslessTransform`, `overlay`, `encode`,
+ * `exifInject`, `galleryQueue`, `ioQueue`, `write`, `base64`, `ordering` (waiting for earlier
+ * photos to be delivered). Only the stages a capture went through appear.
+ */
+export type CaptureTimings = Record<string, number>;
+
+/** Statistics of one stage over the most recent captures. Times are in milliseconds. */
+export interface CaptureStageStats {
+  /** Samples recorded since the last reset. */
+  recorded: number;
+  /** Samples in the window the statistics below are computed from. */
+  count: number;
+  mean: number;
+  min: number;
+  p50: number;
+  p90: number;
+  p99: number;
+  max: number;
+  /** Sample counts per bucket of `bucketBoundsMs`, plus a last bucket for anything slower. */
+  buckets: number[];
+}
+
+/** Rolling capture latency histogram returned by `getCaptureTimings`. */
+export interface CaptureTimingStats {
+  /** Device manufacturer and model, to compare devices. */
+  device: string;
+  /** Number of most recent captures each stage's statistics cover. */
+  window: number;
+  /** Inclusive upper bounds of the histogram buckets, in milliseconds. */
+  bucketBoundsMs: number[];
+  /** Statistics per stage, including `total` and `bridgeResolve` (handing the result to JS). */
+  stages: Record<string, CaptureStageStats>;
+}
+
+/** Result of `capture`. */
+export interface CaptureResult {
+  /** Base64 image, or file path if `storeToFile` is true. Always base64 JPEG for a thumbnail. */
+  value: string;
+  /** Extracted EXIF metadata selected by the `exif` option; empty for a thumbnail. */
+  exif: ExifData;
+  /** True when `value` is the progressive thumbnail. */
+  thumbnail?: boolean;
+  /** Thumbnail width in pixels. */
+  width?: number;
+  /** Thumbnail height in pixels. */
+  height?: number;
+  /**
+   * Identifies the `captureComplete` event carrying the full-resolution result, and with
+   * `saveToGallery` the capture's item in the `gallerySave` event.
+   */
+  captureId?: string;
+  /** Per-stage timings, when `timings` was requested. */
+  timings?: CaptureTimings;
+  /**
+   * Peak bytes of bitmaps and buffers held while re-encoding the photo, when `timings` was
+   * requested and the photo was decoded (not for lossless crops).
+   */
+  peakBytes?: number;
+}
+
+/** Full-resolution result of a progressive capture. */
+export interface CaptureCompleteEvent {
+  /** The `captureId` returned with the thumbnail. */
+  captureId: string;
+  /** Base64 image, or file path if `storeToFile` is true, when the capture succeeded. */
+  value?: string;
+  /** Extracted EXIF metadata, when the capture succeeded. */
+  exif?: ExifData;
+  /** Why the full-resolution capture failed, when it did. */
+  error?: string;
+  /** Per-stage timings of the capture, when it succeeded. */
+  timings?: CaptureTimings;
+  /** Peak bytes held while re-encoding the photo, when it was decoded. */
+  peakBytes?: number;
 }
 
 /** Represents EXIF data extracted from an image. */
@@ -302,7 +458,12 @@ export interface ExifData {
   [key: string]: any;
 }
 
-export type PictureFormat = 'jpeg' | 'png';
+/**
+ * Encoding of captured images and samples. `webp`, `webp-lossless` and `heif` are Android only
+ * (`heif` needs a hardware HEVC encoder); the web falls back to `png` for every format but `jpeg`.
+ * EXIF from the camera is kept in every format except samples, which have none.
+ */
+export type PictureFormat = 'jpeg' | 'png' | 'webp' | 'webp-lossless' | 'heif';
 
 /** Defines a standard picture size with width and height. */
 export interface PictureSize {
@@ -349,6 +510,33 @@ export interface CameraSampleOptions {
    * @default 85
    */
   quality?: number;
+  /**
+   * The format of the sample. Only `jpeg` samples are served from the latest-frame cache.
+   * @default "jpeg"
+   * @platform android
+   */
+  format?: PictureFormat;
+  /**
+   * Maximum age in milliseconds of a frame served from the latest-frame cache
+   * (see `setSampleCache`). When the cached frame is older, the call waits for a fresh frame.
+   * Omit to accept a cached frame of any age.
+   * @platform android
+   */
+  maxAge?: number;
+  /**
+   * Scores this many consecutive frames for sharpness and returns only the sharpest one,
+   * to avoid motion-blurred samples. The latest-frame cache is bypassed when set.
+   * @default 1
+   * @platform android
+   */
+  sharpestOf?: number;
+  /**
+   * Time window in milliseconds over which frames are scored for sharpness. Selection ends
+   * at whichever of `sharpestOf` frames or this window is reached first.
+   * @default 0
+   * @platform android
+   */
+  sharpestWindow?: number;
 }
 
 /** 
@@ -360,6 +548,12 @@ export interface CameraDownscaledSampleOptions {
    * @default 85
    */
   quality?: number;
+  /**
+   * The format of the sample.
+   * @default "jpeg"
+   * @platform android
+   */
+  format?: PictureFormat;
   /**
    * The target size for the smallest side of the image.
    * The aspect ratio is preserved.
@@ -376,6 +570,12 @@ export interface CameraCroppedSampleOptions {
    * @default 85
    */
   quality?: number;
+  /**
+   * The format of the sample.
+   * @default "jpeg"
+   * @platform android
+   */
+  format?: PictureFormat;
   /**
    * The rectangle area to crop.
    */
@@ -387,6 +587,219 @@ export interface CameraCroppedSampleOptions {
   };
 }
 
+/**
+ * Options for the continuous frame stream.
+ */
+export interface FrameStreamOptions {
+  /**
+   * Maximum number of frames emitted per second.
+   * @default 10
+   */
+  maxFps?: number;
+  /**
+   * The target size for the smallest side of each frame. The aspect ratio is preserved.
+   * Frames are never upscaled. `0` keeps the analysis resolution.
+   * @default 0
+   */
+  size?: number;
+  /**
+   * The JPEG quality of each frame, from 0 to 100.
+   * @default 70
+   */
+  quality?: number;
+  /**
+   * Time in milliseconds after which an unacknowledged frame is considered lost
+   * and streaming resumes.
+   * @default 1000
+   */
+  ackTimeout?: number;
+  /**
+   * Only emit a frame when the scene changed by at least this much since the last emitted frame.
+   * The change is the mean absolute difference of a 32x32 grid of luma block means, from 0 to 255;
+   * values around 4 to 8 ignore sensor noise. `0` disables the gate.
+   * @default 0
+   */
+  sceneChangeThreshold?: number;
+}
+
+/**
+ * Options for the latest-frame cache used by `captureSample`.
+ */
+export interface SampleCacheOptions {
+  /** Whether the cache is kept up to date. Disabling it drops the cached frame. */
+  enabled: boolean;
+  /**
+   * The target size for the smallest side of the cached frame. The aspect ratio is preserved.
+   * Frames are never upscaled. `0` keeps the analysis resolution.
+   * @default 0
+   */
+  size?: number;
+  /**
+   * The JPEG quality of the cached frame, from 0 to 100.
+   * @default 85
+   */
+  quality?: number;
+  /**
+   * Maximum number of cache refreshes per second.
+   * @default 10
+   */
+  maxFps?: number;
+}
+
+/**
+ * A frame emitted by the frame stream.
+ */
+export interface FrameStreamEvent {
+  /** Identifier to pass to `acknowledgeFrame` once the frame has been consumed. */
+  frameId: number;
+  /** The frame as a base64 encoded JPEG. */
+  value: string;
+  /** The width of the frame in pixels. */
+  width: number;
+  /** The height of the frame in pixels. */
+  height: number;
+  /** Total frames dropped so far because the previous frame was not yet acknowledged. */
+  droppedFrames: number;
+  /** Total frames skipped so far because the scene had not changed enough. */
+  unchangedFrames: number;
+  /** Scene change of this frame versus the previous emitted one (0-255), when `sceneChangeThreshold` is set. */
+  sceneDiff?: number;
+}
+
+/**
+ * Counters of a native frame processor on the analysis stream. The built-in `snapshot`
+ * processor serves samples, the frame stream and the sample cache.
+ */
+export interface FrameProcessorStats {
+  /** The name the processor was registered under. */
+  name: string;
+  /** Frames skipped between two runs. */
+  frameSkip: number;
+  /** Time budget per run in milliseconds, `0` when unbounded. */
+  budgetMs: number;
+  /** Frames the processor ran on. */
+  framesProcessed: number;
+  /** Frames skipped because of `frameSkip` or a budget overrun. */
+  framesSkipped: number;
+  /** Runs that exceeded the time budget. */
+  overBudgetRuns: number;
+  /** Average run time in milliseconds. */
+  averageMs: number;
+  /** Duration of the last run in milliseconds. */
+  lastMs: number;
+}
+
+/**
+ * Options for `captureBurst`.
+ */
+export interface BurstOptions {
+  /** Number of photos to take (1-100). */
+  count: number;
+  /**
+   * Minimum time between two shots in milliseconds. `0` shoots as fast as the camera and the
+   * processing queue allow.
+   * @default 0
+   */
+  interval?: number;
+  /**
+   * JPEG quality (1-100) to re-encode each photo with. When omitted, the camera's JPEG is kept
+   * as is and only rotated upright, losslessly, which is much faster.
+   */
+  quality?: number;
+}
+
+/**
+ * Progress of a burst, emitted once per photo in shutter order.
+ */
+export interface BurstProgressEvent {
+  /** Zero-based index of the photo in the burst. */
+  index: number;
+  /** Number of photos requested. */
+  count: number;
+  /** Absolute path of the written file, when the photo succeeded. */
+  path?: string;
+  /** Why the photo failed, when it did. */
+  error?: string;
+}
+
+/**
+ * Where the watermark is drawn on the photo.
+ */
+export type WatermarkPosition = 'top-left' | 'top-right' | 'bottom-left' | 'bottom-right' | 'center';
+
+/**
+ * Options for `setWatermark`.
+ */
+export interface WatermarkOptions {
+  /**
+   * The watermark image: base64 (optionally as a data URL) or an absolute file path.
+   * Omit to remove the watermark.
+   */
+  image?: string;
+  /**
+   * Where to draw the watermark.
+   * @default "bottom-right"
+   */
+  position?: WatermarkPosition;
+  /**
+   * Watermark width as a fraction of the photo width, in (0, 1].
+   * @default 0.25
+   */
+  scale?: number;
+  /**
+   * Watermark opacity, from 0 to 1.
+   * @default 1
+   */
+  opacity?: number;
+}
+
+/**
+ * Outcome of one image written for `saveToGallery`.
+ */
+export interface GallerySaveItem {
+  /** The `captureId` of the capture this image belongs to. */
+  captureId: string;
+  /** URI of the saved image (`content://` on Android 10+, `file://` before), when it succeeded. */
+  uri?: string;
+  /** Why the image could not be saved, when it failed. */
+  error?: string;
+}
+
+/**
+ * A batch of gallery saves. Images saved in quick succession are published to the gallery
+ * together and reported in one event, in capture order.
+ */
+export interface GallerySaveEvent {
+  items: GallerySaveItem[];
+  /** Number of items that failed. */
+  failed: number;
+}
+
+/**
+ * Usage of the directory that `storeToFile` and `captureBurst` files are written to.
+ */
+export interface CaptureCacheStats {
+  /** Number of files in the cache. */
+  files: number;
+  /** Total size of those files in bytes. */
+  bytes: number;
+  /** Byte budget; the oldest files are deleted once it is exceeded. */
+  maxBytes: number;
+  /** Files deleted to stay within the budget since the app started. */
+  evictedFiles: number;
+  /** Bytes freed by those evictions. */
+  evictedBytes: number;
+}
+
+/**
+ * Photo capture mode:
+ * - `minimizeLatency`: short shutter lag at a possible cost in quality.
+ * - `maximizeQuality`: best image quality, with a longer shutter lag.
+ * - `zeroShutterLag`: returns the frame from the moment of the shutter press, from a ring buffer
+ *   of recent frames. Only on supported cameras, and not while the flash fires.
+ */
+export type CaptureMode = 'minimizeLatency' | 'maximizeQuality' | 'zeroShutterLag';
+
 /**
  * Represents safe area insets for devices.
  * Android: Values are expressed in logical pixels (dp) to match JS layout units.
@@ -429,6 +842,10 @@ export interface CameraPreviewPlugin {
     x: number;
     /** The vertical origin of the preview, in pixels. */
     y: number;
+    /** The resolution chosen for the analysis stream (Android only), in sensor orientation. */
+    analysisWidth?: number;
+    /** The resolution chosen for the analysis stream (Android only), in sensor orientation. */
+    analysisHeight?: number;
   }>;
 
   /**
@@ -448,21 +865,53 @@ export interface CameraPreviewPlugin {
    * `value` will be an absolute file path on the device instead of a base64 string. Use getBase64FromFilePath to get the base64 string from the file path.
    *
    * @param {CameraPreviewPictureOptions} options - The options for capturing the picture.
-   * @returns {Promise<{ value: string; exif: ExifData }>} Resolves with:
+   * @returns {Promise<CaptureResult>} Resolves with:
    *   - `value`: base64 string, or file path if `storeToFile` is true
    *   - `exif`: extracted EXIF metadata when available
+   *   - with `progressive`, the thumbnail, its size and the `captureId` of the full result
    * @since 0.0.1
    */
-  capture(options: CameraPreviewPictureOptions): Promise<{ value: string; exif: ExifData }>;
+  capture(options: CameraPreviewPictureOptions): Promise<CaptureResult>;
+
+  /**
+   * Takes a burst of full-resolution photos natively. Each photo is written to the cache
+   * directory as soon as it is processed and reported with a `burstProgress` event. The sensor
+   * is held back while `maxCapturesInFlight` photos are waiting to be processed, which bounds
+   * memory use. Stopping the camera ends the burst early with the photos taken so far.
+   * The photos count against the capture cache budget (see `setCaptureCacheLimit`) but are not
+   * evicted while the burst runs, so every returned file exists when the promise resolves; they
+   * may be evicted by later captures, so copy the ones to keep.
+   *
+   * @param {BurstOptions} options - Number of photos, interval and quality.
+   * @returns {Promise<{ files: string[]; failed: number }>} The written files in shutter order and the number of failed photos.
+   * @since 7.27.0
+   * @platform android
+   */
+  captureBurst(options: BurstOptions): Promise<{ files: string[]; failed: number }>;
 
   /**
    * Captures a single frame from the camera preview stream.
    *
+   * On Android, concurrent calls are queued (up to 16 pending requests) and served from the
+   * same analysis frame instead of being rejected; calls beyond that limit are rejected.
+   * When the latest-frame cache is enabled with `setSampleCache`, the call resolves right away
+   * from the cache (at the cache's size and quality) and `age` reports how old that frame is.
+   *
    * @param {CameraSampleOptions} options - The options for capturing the sample.
-   * @returns {Promise<{ value: string }>} A promise that resolves with the sample image as a base64 encoded string.
+   * @returns {Promise<{ value: string; age?: number }>} A promise that resolves with the sample image as a base64 encoded string.
    * @since 0.0.1
    */
-  captureSample(options: CameraSampleOptions): Promise<{ value: string }>;
+  captureSample(options: CameraSampleOptions): Promise<{ value: string; age?: number }>;
+
+  /**
+   * Enables or disables the latest-frame cache that lets `captureSample` resolve without
+   * waiting for the next analysis frame.
+   *
+   * @param {SampleCacheOptions} options - The cache options.
+   * @since 7.27.0
+   * @platform android
+   */
+  setSampleCache(options: SampleCacheOptions): Promise<void>;
 
   /** 
    * NEW: Captures a downscaled sample.
@@ -479,6 +928,48 @@ export interface CameraPreviewPlugin {
    */
   captureCroppedSample(options: CameraCroppedSampleOptions): Promise<{ value: string }>;
 
+  /**
+   * Starts pushing preview frames as `frameStream` events.
+   *
+   * Frames are throttled to `maxFps`. While the previous frame has not been acknowledged with
+   * `acknowledgeFrame`, new frames are dropped and counted in `droppedFrames`.
+   *
+   * @param {FrameStreamOptions} options - The stream options.
+   * @since 7.27.0
+   * @platform android
+   */
+  startFrameStream(options?: FrameStreamOptions): Promise<void>;
+
+  /**
+   * Stops the frame stream.
+   *
+   * @returns {Promise<{ framesSent: number; framesDropped: number; framesUnchanged: number }>} Totals for the stream that was stopped.
+   * @since 7.27.0
+   * @platform android
+   */
+  stopFrameStream(): Promise<{ framesSent: number; framesDropped: number; framesUnchanged: number }>;
+
+  /**
+   * Marks a stream frame as consumed so the next frame can be emitted.
+   *
+   * @param {{ frameId: number }} options - The `frameId` of the consumed `frameStream` event.
+   * @since 7.27.0
+   * @platform android
+   */
+  acknowledgeFrame(options: { frameId: number }): Promise<void>;
+
+  /**
+   * Gets the counters of the native frame processors running on the analysis stream.
+   *
+   * Processors are registered from native code with `CameraPreview.registerFrameProcessor`,
+   * each with its own frame-skip and time budget.
+   *
+   * @returns {Promise<{ processors: FrameProcessorStats[] }>} The processors in registration order.
+   * @since 7.27.0
+   * @platform android
+   */
+  getFrameProcessorStats(): Promise<{ processors: FrameProcessorStats[] }>;
+
   /**
    * Gets the flash modes supported by the active camera.
    *
@@ -574,6 +1065,35 @@ export interface CameraPreviewPlugin {
     supportedPictureSizes: SupportedPictureSizes[];
   }>;
 
+  /**
+   * Lists the picture formats this device can encode captures and samples in.
+   *
+   * @returns {Promise<{ formats: PictureFormat[] }>} The supported formats, always including `jpeg` and `png`.
+   * @since 7.27.0
+   * @platform android
+   */
+  getSupportedPictureFormats(): Promise<{ formats: PictureFormat[] }>;
+
+  /**
+   * Changes the capture mode of the running camera. Only the photo use case is rebound; the
+   * preview and frame analysis keep running. Rejects while photos or a burst are being captured.
+   *
+   * @param {{ captureMode: CaptureMode }} options - The requested mode.
+   * @returns {Promise<{ captureMode: CaptureMode }>} The mode in use, after falling back for unsupported modes.
+   * @since 7.27.0
+   * @platform android
+   */
+  setCaptureMode(options: { captureMode: CaptureMode }): Promise<{ captureMode: CaptureMode }>;
+
+  /**
+   * Returns the capture mode in use and whether the active camera supports zero-shutter-lag.
+   *
+   * @returns {Promise<{ captureMode: CaptureMode; zeroShutterLagSupported: boolean }>} The effective mode and ZSL support.
+   * @since 7.27.0
+   * @platform android
+   */
+  getCaptureMode(): Promise<{ captureMode: CaptureMode; zeroShutterLagSupported: boolean }>;
+
   /**
    * Sets the flash mode for the active camera.
    *
@@ -770,6 +1290,59 @@ export interface CameraPreviewPlugin {
     eventName: 'orientationChange',
     listenerFunc: (data: { orientation: DeviceOrientation }) => void,
   ): Promise<PluginListenerHandle>;
+
+  /**
+   * Adds a listener for frames emitted by `startFrameStream`.
+   * @param {string} eventName - The event name to listen for.
+   * @param {Function} listenerFunc - The function to call for each frame.
+   * @returns {Promise<PluginListenerHandle>} A promise that resolves with a handle to the listener.
+   * @since 7.27.0
+   * @platform android
+   */
+  addListener(eventName: 'frameStream', listenerFunc: (data: FrameStreamEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Adds a listener for results of native frame processors registered by the host app.
+   * @param {string} eventName - The event name to listen for.
+   * @param {Function} listenerFunc - The function to call with the processor name and its result.
+   * @returns {Promise<PluginListenerHandle>} A promise that resolves with a handle to the listener.
+   * @since 7.27.0
+   * @platform android
+   */
+  addListener(
+    eventName: 'frameProcessorResult',
+    listenerFunc: (data: { name: string; result: Record<string, any> }) => void,
+  ): Promise<PluginListenerHandle>;
+
+  /**
+   * Adds a listener for per-photo progress of `captureBurst`.
+   * @param {string} eventName - The event name to listen for.
+   * @param {Function} listenerFunc - The function to call with the photo's index and file path or error.
+   * @returns {Promise<PluginListenerHandle>} A promise that resolves with a handle to the listener.
+   * @since 7.27.0
+   * @platform android
+   */
+  addListener(eventName: 'burstProgress', listenerFunc: (data: BurstProgressEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Adds a listener for the results of `saveToGallery` captures, delivered in batches.
+   * @param {string} eventName - The event name to listen for.
+   * @param {Function} listenerFunc - The function to call with the saved URIs and failures.
+   * @returns {Promise<PluginListenerHandle>} A promise that resolves with a handle to the listener.
+   * @since 7.27.0
+   * @platform android
+   */
+  addListener(eventName: 'gallerySave', listenerFunc: (data: GallerySaveEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Adds a listener for the full-resolution results of `progressive` captures.
+   * @param {string} eventName - The event name to listen for.
+   * @param {Function} listenerFunc - The function to call with the capture's id and its result or error.
+   * @returns {Promise<PluginListenerHandle>} A promise that resolves with a handle to the listener.
+   * @since 7.27.0
+   * @platform android
+   */
+  addListener(eventName: 'captureComplete', listenerFunc: (data: CaptureCompleteEvent) => void): Promise<PluginListenerHandle>;
   /**
    * Deletes a file at the given absolute path on the device.
    * Use this to quickly clean up temporary images created with `storeToFile`.
@@ -779,6 +1352,67 @@ export interface CameraPreviewPlugin {
    */
   deleteFile(options: { path: string }): Promise<{ success: boolean }>;
 
+  /**
+   * Returns the rolling per-stage latency statistics of recent `capture` calls.
+   *
+   * @returns {Promise<CaptureTimingStats>} Percentiles and histogram buckets per stage.
+   * @since 7.27.0
+   * @platform android
+   */
+  getCaptureTimings(): Promise<CaptureTimingStats>;
+
+  /**
+   * Clears the statistics returned by `getCaptureTimings`.
+   *
+   * @returns {Promise<void>} A promise that resolves once the statistics are cleared.
+   * @since 7.27.0
+   * @platform android
+   */
+  resetCaptureTimings(): Promise<void>;
+
+  /**
+   * Sets an image drawn on every photo taken with `capture` until it is removed, together with
+   * `embedTimestamp` and `embedLocation` when those are requested. The image is decoded and scaled
+   * once and kept across camera restarts. While a watermark is set, photos are always re-encoded.
+   *
+   * @param {WatermarkOptions} options - The image and how to draw it; omit `image` to remove the watermark.
+   * @returns {Promise<void>} A promise that resolves once the watermark is applied.
+   * @since 7.27.0
+   * @platform android
+   */
+  setWatermark(options: WatermarkOptions): Promise<void>;
+
+  /**
+   * Returns the usage of the capture cache, where `storeToFile` captures and burst photos are written.
+   *
+   * @returns {Promise<CaptureCacheStats>} File count, size, budget and evictions.
+   * @since 7.27.0
+   * @platform android
+   */
+  getCaptureCacheStats(): Promise<CaptureCacheStats>;
+
+  /**
+   * Sets the capture cache's byte budget (256 MB by default). Once exceeded, files are deleted
+   * oldest first; the newest capture is always kept, and so are the photos of a running
+   * `captureBurst`, which may push the cache over budget until the burst resolves.
+   *
+   * @param {{ maxBytes: number }} options - The budget in bytes.
+   * @returns {Promise<void>} A promise that resolves once files over the new budget are deleted.
+   * @since 7.27.0
+   * @platform android
+   */
+  setCaptureCacheLimit(options: { maxBytes: number }): Promise<void>;
+
+  /**
+   * Deletes files from the capture cache.
+   *
+   * @param {{ olderThanMs?: number }} [options] - Only delete files written more than this many milliseconds ago. Defaults to deleting every file.
+   * @returns {Promise<{ deletedFiles: number; freedBytes: number }>} How many files were deleted and the bytes freed.
+   * @since 7.27.0
+   * @platform android
+   */
+  purgeCaptureCache(options?: { olderThanMs?: number }): Promise<{ deletedFiles: number; freedBytes: number }>;
+
   /**
    * Gets the safe area insets for devices.
    * Returns the orientation-aware notch/camera cutout inset and the current orientation.
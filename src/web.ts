@@ -2,6 +2,7 @@ import { WebPlugin } from '@capacitor/core';
 import type { PermissionState } from '@capacitor/core';
 
 import type {
+  BurstOptions,
   CameraDevice,
   CameraOpacityOptions,
   CameraPreviewFlashMode,
@@ -12,13 +13,21 @@ import type {
   CameraDownscaledSampleOptions, 
   CameraCroppedSampleOptions,
   CameraPermissionStatus,
+  CaptureCacheStats,
+  CaptureMode,
+  CaptureTimingStats,
   DeviceOrientation,
   GridMode,
   ExposureMode,
   FlashMode,
+  FrameProcessorStats,
+  FrameStreamOptions,
   LensInfo,
   PermissionRequestOptions,
+  PictureFormat,
   SafeAreaInsets,
+  SampleCacheOptions,
+  WatermarkOptions,
 } from './definitions';
 import { DeviceType } from './definitions';
 
@@ -639,6 +648,10 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     });
   }
 
+  async captureBurst(_options: BurstOptions): Promise<{ files: string[]; failed: number }> {
+    throw new Error('captureBurst not implemented on web');
+  }
+
   async captureSample(_options: CameraSampleOptions): Promise<any> {
     return this.capture(_options);
   }
@@ -651,6 +664,26 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     throw new Error('captureCroppedSample not implemented on web');
   }
 
+  async setSampleCache(_options: SampleCacheOptions): Promise<void> {
+    throw new Error('setSampleCache not implemented on web');
+  }
+
+  async startFrameStream(_options?: FrameStreamOptions): Promise<void> {
+    throw new Error('startFrameStream not implemented on web');
+  }
+
+  async stopFrameStream(): Promise<{ framesSent: number; framesDropped: number; framesUnchanged: number }> {
+    throw new Error('stopFrameStream not implemented on web');
+  }
+
+  async acknowledgeFrame(_options: { frameId: number }): Promise<void> {
+    throw new Error('acknowledgeFrame not implemented on web');
+  }
+
+  async getFrameProcessorStats(): Promise<{ processors: FrameProcessorStats[] }> {
+    throw new Error('getFrameProcessorStats not implemented on web');
+  }
+
   async stopRecordVideo(): Promise<any> {
     throw new Error('stopRecordVideo not supported under the web platform');
   }
@@ -1254,6 +1287,46 @@ export class CameraPreviewWeb extends WebPlugin implements CameraPreviewPlugin {
     throw new Error('deleteFile not supported under the web platform');
   }
 
+  async setCaptureMode(_options: { captureMode: CaptureMode }): Promise<{ captureMode: CaptureMode }> {
+    void _options;
+    throw new Error('setCaptureMode not implemented on web');
+  }
+
+  async getCaptureMode(): Promise<{ captureMode: CaptureMode; zeroShutterLagSupported: boolean }> {
+    throw new Error('getCaptureMode not implemented on web');
+  }
+
+  async getSupportedPictureFormats(): Promise<{ formats: PictureFormat[] }> {
+    throw new Error('getSupportedPictureFormats not implemented on web');
+  }
+
+  async getCaptureTimings(): Promise<CaptureTimingStats> {
+    throw new Error('getCaptureTimings not implemented on web');
+  }
+
+  async resetCaptureTimings(): Promise<void> {
+    throw new Error('resetCaptureTimings not implemented on web');
+  }
+
+  async setWatermark(_options: WatermarkOptions): Promise<void> {
+    void _options;
+    throw new Error('setWatermark not implemented on web');
+  }
+
+  async getCaptureCacheStats(): Promise<CaptureCacheStats> {
+    throw new Error('getCaptureCacheStats not implemented on web');
+  }
+
+  async setCaptureCacheLimit(_options: { maxBytes: number }): Promise<void> {
+    void _options;
+    throw new Error('setCaptureCacheLimit not implemented on web');
+  }
+
+  async purgeCaptureCache(_options?: { olderThanMs?: number }): Promise<{ deletedFiles: number; freedBytes: number }> {
+    void _options;
+    throw new Error('purgeCaptureCache not implemented on web');
+  }
+
   async getPluginVersion(): Promise<{ version: string }> {
     return { version: 'web' };
   }